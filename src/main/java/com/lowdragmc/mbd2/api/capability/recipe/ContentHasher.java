@@ -0,0 +1,69 @@
+package com.lowdragmc.mbd2.api.capability.recipe;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A 64-bit hasher for fingerprinting the contents of recipe handlers, see {@link IRecipeHandler#hashContents(ContentHasher)}.
+ * <br>
+ * Holders with the same fingerprint are considered to have identical contents for recipe searching.
+ */
+public final class ContentHasher {
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private long hash;
+
+    public ContentHasher putLong(long value) {
+        hash = (hash ^ value) * MULTIPLIER;
+        hash ^= hash >>> 29;
+        return this;
+    }
+
+    public ContentHasher putBoolean(boolean value) {
+        return putLong(value ? 1 : 2);
+    }
+
+    /**
+     * Put an object by its {@link Object#hashCode()}, e.g. items, fluids, nbt.
+     */
+    public ContentHasher putObject(Object value) {
+        return putLong(value == null ? 0 : value.hashCode());
+    }
+
+    /**
+     * Put an object by its identity, e.g. definitions.
+     */
+    public ContentHasher putIdentity(Object value) {
+        return putLong(System.identityHashCode(value));
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Hash all recipe handlers of the holder, including their IO, slot names and contents.
+     * @return false if any handler can't hash its contents, the holder can't be fingerprinted.
+     */
+    public boolean putHolder(IRecipeCapabilityHolder holder) {
+        for (var io : IO.values()) {
+            var row = holder.getRecipeCapabilitiesProxy().row(io);
+            // capabilities are unordered, their hashes are combined commutatively.
+            long rowHash = 0;
+            for (Map.Entry<RecipeCapability<?>, List<IRecipeHandler<?>>> entry : row.entrySet()) {
+                var previous = hash;
+                hash = 0;
+                putIdentity(entry.getKey());
+                for (IRecipeHandler<?> handler : entry.getValue()) {
+                    putBoolean(handler.isDistinct());
+                    putObject(handler.getSlotNames());
+                    if (!handler.hashContents(this)) return false;
+                }
+                rowHash += hash;
+                hash = previous;
+            }
+            putLong(io.ordinal());
+            putLong(rowHash);
+        }
+        return true;
+    }
+}
@@ -7,6 +7,7 @@ import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -33,6 +34,43 @@ public interface IRecipeHandler<K> {
      */
     List<K> handleRecipeInner(IO io, MBDRecipe recipe, List<K> left, @Nullable String slotName, boolean simulate);
 
+    /**
+     * Simulate handling the given contents, without copying the contents or the storage.
+     * <br/>
+     * The left amount of {@code contents.get(i)} is kept by the current frame of the ledger, see {@link RecipeSimulationLedger#getLeft(int, long)}.
+     * Skip satisfied contents and decrease the left amounts by what this handler can supply or accept.
+     * It should be consistent with {@link #handleRecipeInner} in simulation.
+     * <br/>
+     * Note: it may be called in the async searching threads.
+     *
+     * @param io       the IO type of this recipe. always be one of the {@link IO#IN} or {@link IO#OUT}
+     * @param recipe   recipe.
+     * @param contents contents to be simulated, do not modify them.
+     * @param slotName specific slot name.
+     * @param ledger   the simulation ledger of current thread.
+     * @return false - simulation is not supported, {@link #handleRecipe} will be used for simulating instead.
+     */
+    default boolean simulateRecipe(IO io, MBDRecipe recipe, List<?> contents, @Nullable String slotName, RecipeSimulationLedger ledger) {
+        return false;
+    }
+
+    /**
+     * How much of the given content this handler can supply ({@link IO#IN}) or accept ({@link IO#OUT}) at most,
+     * in the unit of {@link RecipeCapability#getAmount}. It must never be less than what {@link #simulateRecipe} could handle.
+     * <br/>
+     * It is used to estimate the max parallel of recipes in one pass, see {@link MBDRecipe#estimateParallel}.
+     * <br/>
+     * Note: it may be called in the async searching threads.
+     *
+     * @param io       the IO type of this recipe. always be one of the {@link IO#IN} or {@link IO#OUT}
+     * @param content  the content to be queried, do not modify it.
+     * @param slotName specific slot name.
+     * @return -1 - the capacity is unknown, parallels will be searched by matching instead.
+     */
+    default long getCapacity(IO io, Object content, @Nullable String slotName) {
+        return -1;
+    }
+
     /**
      * Slot name, it makes sense if recipe contents specify a slot name.
      */
@@ -47,6 +85,28 @@ public interface IRecipeHandler<K> {
         return false;
     }
 
+    /**
+     * Collect the lookup keys of contents currently held by this handler, e.g. items in slots.
+     * It is used by {@link com.lowdragmc.mbd2.api.recipe.RecipeIndex} to filter recipe candidates.
+     * <br/>
+     * Note: it may be called in the async searching threads.
+     * @return false - the handler can't enumerate its contents, all recipes of this capability will be matched.
+     */
+    default boolean collectIndexKeys(Consumer<Object> collector) {
+        return false;
+    }
+
+    /**
+     * Hash the current contents of this handler (e.g. items and their counts in slots) and whatever affects recipe handling (e.g. capacity).
+     * It is used to fingerprint holders for recipe searching, see {@link ContentHasher#putHolder(IRecipeCapabilityHolder)}.
+     * <br/>
+     * Note: it may be called in the async searching threads.
+     * @return false - the handler can't hash its contents, the holder won't be fingerprinted.
+     */
+    default boolean hashContents(ContentHasher hasher) {
+        return false;
+    }
+
     /**
      * Refer to the recipe capability.
      */
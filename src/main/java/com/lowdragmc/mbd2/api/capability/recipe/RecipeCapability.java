@@ -95,6 +95,26 @@ public abstract class RecipeCapability<T> {
      */
     public abstract Component getLeftErrorInfo(List<T> left);
 
+    /**
+     * Collect the lookup keys of a recipe content, e.g. items of an ingredient. It is used to build the {@link com.lowdragmc.mbd2.api.recipe.RecipeIndex}.
+     * <br>
+     * keys have to be equal to the ones reported by {@link IRecipeHandler#collectIndexKeys(Consumer)} for the same content.
+     * @return false - the content can't be indexed, recipes requiring it will always be matched.
+     */
+    public boolean collectIndexKeys(T content, Consumer<Object> collector) {
+        return false;
+    }
+
+    /**
+     * The amount of a content, in the same unit as {@link IRecipeHandler#getCapacity}. It should scale linearly with {@link ContentModifier#multiplier}.
+     * <br>
+     * It is used to estimate the max parallel of recipes, see {@link com.lowdragmc.mbd2.api.recipe.MBDRecipe#estimateParallel}.
+     * @return -1 - the content has no measurable amount.
+     */
+    public long getAmount(T content) {
+        return -1;
+    }
+
     //TODO
     public double calculateAmount(List<T> left) {
         return 1;
@@ -5,6 +5,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * It is used to append slot names to the recipe handler.
@@ -16,6 +17,16 @@ public record RecipeHandlerSlotsProxy<T>(IRecipeHandler<T> proxy, Set<String> sl
         return proxy.handleRecipeInner(io, recipe, left, slotName, simulate);
     }
 
+    @Override
+    public boolean simulateRecipe(IO io, MBDRecipe recipe, List<?> contents, @Nullable String slotName, RecipeSimulationLedger ledger) {
+        return proxy.simulateRecipe(io, recipe, contents, slotName, ledger);
+    }
+
+    @Override
+    public long getCapacity(IO io, Object content, @Nullable String slotName) {
+        return proxy.getCapacity(io, content, slotName);
+    }
+
     @Override
     public Set<String> getSlotNames() {
         return slotNames;
@@ -26,6 +37,16 @@ public record RecipeHandlerSlotsProxy<T>(IRecipeHandler<T> proxy, Set<String> sl
         return proxy.isDistinct();
     }
 
+    @Override
+    public boolean collectIndexKeys(Consumer<Object> collector) {
+        return proxy.collectIndexKeys(collector);
+    }
+
+    @Override
+    public boolean hashContents(ContentHasher hasher) {
+        return proxy.hashContents(hasher);
+    }
+
     @Override
     public RecipeCapability<T> getRecipeCapability() {
         return proxy.getRecipeCapability();
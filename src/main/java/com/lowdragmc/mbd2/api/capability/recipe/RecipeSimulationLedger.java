@@ -0,0 +1,129 @@
+package com.lowdragmc.mbd2.api.capability.recipe;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * A reusable scratch ledger for {@link IRecipeHandler#simulateRecipe}, there is one ledger per thread.
+ * <br>
+ * It keeps the left amounts of the contents being simulated in stacked frames, so that the leftovers can be carried from one handler to the next one
+ * without copying contents. Handlers can also use the unit scratch (e.g. per slot / tank) to record what they have taken during a simulation.
+ * <br>
+ * Never hold it beyond a matching call.
+ */
+public final class RecipeSimulationLedger {
+    private static final ThreadLocal<RecipeSimulationLedger> LEDGER = ThreadLocal.withInitial(RecipeSimulationLedger::new);
+    private static final long UNSET = -1;
+
+    private long[] left = new long[32];
+    private int[] frames = new int[8];
+    private int depth;
+    private int base;
+    private int size;
+    private long[] units = new long[32];
+    private Object[] unitKeys = new Object[32];
+    private final Set<IRecipeHandler<?>> usedHandlers = new ReferenceOpenHashSet<>();
+
+    private RecipeSimulationLedger() {
+    }
+
+    /**
+     * Get the ledger of current thread.
+     */
+    public static RecipeSimulationLedger get() {
+        return LEDGER.get();
+    }
+
+    /**
+     * Open a new frame for the given amount of contents. all of them are unset.
+     */
+    public void push(int contentSize) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        frames[depth++] = base;
+        base += size;
+        size = contentSize;
+        if (base + size > left.length) {
+            left = Arrays.copyOf(left, Math.max(left.length * 2, base + size));
+        }
+        Arrays.fill(left, base, base + size, UNSET);
+    }
+
+    /**
+     * Close the current frame and restore the previous one.
+     */
+    public void pop() {
+        var previous = frames[--depth];
+        size = base - previous;
+        base = previous;
+        if (depth == 0) {
+            usedHandlers.clear();
+        }
+    }
+
+    /**
+     * Get the left amount of the content at the given index of current frame.
+     * @param initial the full amount of the content, it will be returned if nothing has been taken yet.
+     */
+    public long getLeft(int index, long initial) {
+        var value = left[base + index];
+        return value == UNSET ? initial : value;
+    }
+
+    public void setLeft(int index, long amount) {
+        left[base + index] = Math.max(amount, 0);
+    }
+
+    /**
+     * Whether the content at the given index of current frame is satisfied.
+     */
+    public boolean isDone(int index) {
+        return left[base + index] == 0;
+    }
+
+    /**
+     * Whether all contents of current frame are satisfied.
+     */
+    public boolean isAllDone() {
+        for (int i = base; i < base + size; i++) {
+            if (left[i] != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get a zeroed unit scratch, it is only valid during the current {@link IRecipeHandler#simulateRecipe} call.
+     */
+    public long[] units(int unitSize) {
+        if (unitSize > units.length) {
+            units = new long[Math.max(units.length * 2, unitSize)];
+        } else {
+            Arrays.fill(units, 0, unitSize, 0);
+        }
+        return units;
+    }
+
+    /**
+     * Get a cleared unit keys scratch, it is only valid during the current {@link IRecipeHandler#simulateRecipe} call.
+     */
+    public Object[] unitKeys(int unitSize) {
+        if (unitSize > unitKeys.length) {
+            unitKeys = new Object[Math.max(unitKeys.length * 2, unitSize)];
+        } else {
+            Arrays.fill(unitKeys, 0, unitSize, null);
+        }
+        return unitKeys;
+    }
+
+    /**
+     * Mark the handler as used in current simulation.
+     * @return false if it has been used already.
+     */
+    public boolean use(IRecipeHandler<?> handler) {
+        return usedHandlers.add(handler);
+    }
+
+}
@@ -6,9 +6,11 @@ import com.lowdragmc.mbd2.api.recipe.MBDRecipe;
 import com.lowdragmc.mbd2.api.recipe.MBDRecipeType;
 import com.lowdragmc.mbd2.api.recipe.RecipeLogic;
 import com.lowdragmc.mbd2.api.recipe.content.ContentModifier;
+import com.lowdragmc.mbd2.core.BlockEntityDirtyQueue;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.BlockGetter;
 import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntity;
@@ -71,10 +73,9 @@ public interface IMachine extends IRecipeCapabilityHolder {
      * Mark the machine as dirty.
      */
     default void markDirty() {
-        var level = getLevel();
-        // make sure mark dirty in the server thread.
-        if (level != null && !level.isClientSide && level.getServer() != null) {
-            level.getServer().execute(() -> getHolder().setChanged());
+        // changes are coalesced and applied in the server thread at the end of the level tick.
+        if (getLevel() instanceof ServerLevel serverLevel && serverLevel instanceof BlockEntityDirtyQueue.Holder holder) {
+            holder.mbd2$getBlockEntityDirtyQueue().markDirty(getHolder(), serverLevel.getServer().isSameThread());
         }
     }
 
@@ -165,7 +166,7 @@ public interface IMachine extends IRecipeCapabilityHolder {
      * You should call it in yourselves {@link BlockEntity#setRemoved()}.
      */
     default void onUnload() {
-
+        getRecipeLogic().wakeUp();
     }
 
     /**
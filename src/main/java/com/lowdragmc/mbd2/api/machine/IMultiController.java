@@ -57,6 +57,22 @@ public interface IMultiController extends IMachine {
         return result;
     }
 
+    /**
+     * Re-check a changed block of the formed structure with a lock, see {@link BlockPattern#checkBlockAt(MultiblockState, BlockPos)}.
+     * @return true - the structure is still formed and nothing needs to be refreshed. false - a full checking is required.
+     */
+    default boolean checkBlockWithLock(BlockPos pos) {
+        BlockPattern pattern = getPattern();
+        if (pattern == null) return false;
+        var lock = getPatternLock();
+        lock.lock();
+        try {
+            return pattern.checkBlockAt(getMultiblockState(), pos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Check pattern with a try lock
      * @return false - checking failed or cant get the lock.
@@ -86,6 +102,15 @@ public interface IMultiController extends IMachine {
      */
     boolean isFormed();
 
+    /**
+     * Get a signature of the pattern which is stable across restarts, formed structures will be persisted and restored with it.
+     * see {@link MultiblockState#saveStructure()}.
+     * @return 0 if the pattern can't be persisted, e.g. dynamic patterns.
+     */
+    default long getPatternSignature() {
+        return 0;
+    }
+
     /**
      * Get MultiblockState. It records all structure-related information.
      */
@@ -1,6 +1,7 @@
 package com.lowdragmc.mbd2.api.pattern;
 
 import com.lowdragmc.lowdraglib.utils.BlockInfo;
+import com.lowdragmc.mbd2.api.capability.recipe.IO;
 import com.lowdragmc.mbd2.api.machine.IMachine;
 import com.lowdragmc.mbd2.api.machine.IMultiController;
 import com.lowdragmc.mbd2.api.machine.IMultiPart;
@@ -8,9 +9,15 @@ import com.lowdragmc.mbd2.api.pattern.error.PatternError;
 import com.lowdragmc.mbd2.api.pattern.error.PatternStringError;
 import com.lowdragmc.mbd2.api.pattern.error.SinglePredicateError;
 import com.lowdragmc.mbd2.api.pattern.predicates.SimplePredicate;
+import com.lowdragmc.mbd2.api.pattern.util.BlockStateSnapshot;
 import com.lowdragmc.mbd2.api.pattern.util.PatternMatchContext;
 import com.lowdragmc.mbd2.api.pattern.util.RelativeDirection;
+import com.lowdragmc.mbd2.config.ConfigHolder;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.world.InteractionHand;
@@ -25,12 +32,17 @@ import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.phys.BlockHitResult;
 import org.apache.commons.lang3.ArrayUtils;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 public class BlockPattern {
 
     static Direction[] FACINGS = {Direction.SOUTH, Direction.NORTH, Direction.WEST, Direction.EAST, Direction.UP, Direction.DOWN};
     static Direction[] FACINGS_H = {Direction.SOUTH, Direction.NORTH, Direction.WEST, Direction.EAST};
+    /**
+     * Matched cells before capturing the {@link BlockStateSnapshot}, checks failing early shouldn't pay for the whole bounding box.
+     */
+    private static final int SNAPSHOT_AFTER_CELLS = 64;
     public final int[][] aisleRepetitions;
     public final RelativeDirection[] structureDir;
     protected final TraceabilityPredicate[][][] blockMatches; //[z][y][x]
@@ -84,13 +96,47 @@ public class BlockPattern {
         return false;
     }
 
+    /**
+     * Check the pattern at the given center and facing.
+     * <br>
+     * Large patterns are checked against a {@link BlockStateSnapshot} of their bounding box, see {@link ConfigHolder#patternSnapshotMinVolume}.
+     * The snapshot is only captured once {@link #SNAPSHOT_AFTER_CELLS} cells matched, most checks of unformed structures fail before that.
+     */
     public boolean checkPatternAt(MultiblockState worldState, BlockPos centerPos, Direction facing, boolean savePredicate) {
+        var actualFacings = getActualFacings(facing);
+        try {
+            return checkPatternAt(worldState, centerPos, actualFacings, savePredicate);
+        } finally {
+            var snapshot = worldState.getSnapshot();
+            if (snapshot != null) {
+                worldState.setSnapshot(null);
+                snapshot.release();
+            }
+        }
+    }
+
+    private boolean checkPatternAt(MultiblockState worldState, BlockPos centerPos, Direction[] actualFacings, boolean savePredicate) {
+        // only structures of fixed shapes can be re-checked incrementally, see checkBlockAt
+        var cells = hasFixedShape() ? CellBuffer.acquire() : null;
+        try {
+            return checkPatternAt(worldState, centerPos, actualFacings, savePredicate, cells);
+        } finally {
+            if (cells != null) {
+                cells.release();
+            }
+        }
+    }
+
+    private boolean checkPatternAt(MultiblockState worldState, BlockPos centerPos, Direction[] actualFacings, boolean savePredicate, @Nullable CellBuffer cells) {
         boolean findFirstAisle = false;
         int minZ = -centerOffset[4];
         worldState.clean();
         PatternMatchContext matchContext = worldState.getMatchContext();
         Map<SimplePredicate, Integer> globalCount = worldState.getGlobalCount();
         Map<SimplePredicate, Integer> layerCount = worldState.getLayerCount();
+        // positions are only copied once they are stored
+        var pos = new BlockPos.MutableBlockPos();
+        var matchedCells = 0;
         //Checking aisles
         for (int c = 0, z = minZ++, r; c < this.fingerLength; c++) {
             //Checking repeatable slices
@@ -98,19 +144,23 @@ public class BlockPattern {
             for (r = 0; (findFirstAisle ? r < aisleRepetitions[c][1] : z <= -centerOffset[3]); r++) {
                 //Checking single slice
                 layerCount.clear();
+                var sliceStart = cells == null ? 0 : cells.size;
 
                 for (int b = 0, y = -centerOffset[1]; b < this.thumbLength; b++, y++) {
                     for (int a = 0, x = -centerOffset[0]; a < this.palmLength; a++, x++) {
                         worldState.setError(null);
                         TraceabilityPredicate predicate = this.blockMatches[c][b][a];
-                        BlockPos pos = setActualRelativeOffset(x, y, z, facing).offset(centerPos.getX(), centerPos.getY(), centerPos.getZ());
+                        setActualPos(pos, actualFacings, x, y, z, centerPos);
                         if (!worldState.update(pos, predicate)) {
                             return false;
                         }
                         if (predicate.addCache()) {
                             worldState.addPosCache(pos);
                             if (savePredicate) {
-                                matchContext.getOrCreate("predicates", HashMap::new).put(pos, predicate);
+                                matchContext.getOrCreate("predicates", HashMap::new).put(pos.immutable(), predicate);
+                            }
+                            if (cells != null) {
+                                cells.add(pos.asLong(), predicate);
                             }
                         }
                         boolean canPartShared = true;
@@ -136,13 +186,19 @@ public class BlockPattern {
                                     z = minZ++;
                                     matchContext.reset();
                                     findFirstAisle = false;
+                                    if (cells != null) cells.size = 0;
                                 }
                             } else {
                                 z++;//continue searching for the first aisle
                             }
+                            // drop cells of the failed slice
+                            if (cells != null && cells.size > sliceStart) cells.size = sliceStart;
                             continue loop;
                         }
-                        matchContext.getOrCreate("ioMap", Long2ObjectOpenHashMap::new).put(worldState.getPos().asLong(), worldState.io);
+                        matchContext.getOrCreate("ioMap", Long2ObjectOpenHashMap::new).put(pos.asLong(), worldState.io);
+                        if (++matchedCells == SNAPSHOT_AFTER_CELLS && worldState.getSnapshot() == null) {
+                            worldState.setSnapshot(captureSnapshot(worldState.getWorld(), centerPos, actualFacings));
+                        }
                     }
                 }
                 findFirstAisle = true;
@@ -173,10 +229,125 @@ public class BlockPattern {
             }
         }
 
+        if (cells != null) {
+            matchContext.set("cellPredicates", cells.toMap());
+        }
+        matchContext.set("pattern", this);
         worldState.setError(null);
         return true;
     }
 
+    /**
+     * Predicates of checked cells, they are stored into the match context only once the checking succeeds.
+     * Buffers are reused per thread, so that failed checks don't allocate.
+     */
+    private static final class CellBuffer {
+        private static final ThreadLocal<CellBuffer> BUFFERS = ThreadLocal.withInitial(CellBuffer::new);
+
+        private long[] positions = new long[64];
+        private TraceabilityPredicate[] predicates = new TraceabilityPredicate[64];
+        private int size;
+        private boolean inUse;
+
+        private static CellBuffer acquire() {
+            var buffer = BUFFERS.get();
+            if (buffer.inUse) {
+                // nested checking in the same thread
+                buffer = new CellBuffer();
+            }
+            buffer.inUse = true;
+            return buffer;
+        }
+
+        private void add(long pos, TraceabilityPredicate predicate) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                predicates = Arrays.copyOf(predicates, size * 2);
+            }
+            positions[size] = pos;
+            predicates[size++] = predicate;
+        }
+
+        private Long2ObjectOpenHashMap<TraceabilityPredicate> toMap() {
+            var map = new Long2ObjectOpenHashMap<TraceabilityPredicate>(size);
+            for (int i = 0; i < size; i++) {
+                map.put(positions[i], predicates[i]);
+            }
+            return map;
+        }
+
+        private void release() {
+            Arrays.fill(predicates, 0, size, null);
+            size = 0;
+            inUse = false;
+        }
+    }
+
+    /**
+     * Whether all aisles have a fixed amount of repetitions, so that the positions of a formed structure never shift.
+     */
+    public boolean hasFixedShape() {
+        for (int[] repetition : aisleRepetitions) {
+            if (repetition[0] != repetition[1]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether any predicate matches the NBT of block entities or the controller, such structures can't be validated by block states only.
+     */
+    public boolean hasNBTPredicates() {
+        for (var aisle : blockMatches) {
+            for (var row : aisle) {
+                for (var predicate : row) {
+                    if (predicate == null) continue;
+                    if (hasNBTPredicates(predicate.common) || hasNBTPredicates(predicate.limited)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasNBTPredicates(List<SimplePredicate> predicates) {
+        for (var predicate : predicates) {
+            if ((predicate.nbt != null && !predicate.nbt.isEmpty()) || (predicate.controllerNbt != null && !predicate.controllerNbt.isEmpty())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Re-check a single changed block of a formed structure against the predicate stored by the last successful {@link #checkPatternAt(MultiblockState, boolean)}.
+     * <br>
+     * It only succeeds if the result of a full checking is guaranteed to be the same, e.g. the block still matches a predicate without count limits,
+     * and it doesn't affect parts, io, slots or rendering. Otherwise, a full {@link #checkPatternAt(MultiblockState, boolean)} is required.
+     * @return true - the structure is still formed with the same match context.
+     */
+    public boolean checkBlockAt(MultiblockState worldState, BlockPos pos) {
+        var matchContext = worldState.getMatchContext();
+        if (worldState.hasError() || matchContext.get("pattern") != this || !hasFixedShape()) return false;
+        Long2ObjectMap<TraceabilityPredicate> predicates = matchContext.get("cellPredicates");
+        if (predicates == null) return false;
+        var predicate = predicates.get(pos.asLong());
+        if (predicate == null || !predicate.isIncrementallyCheckable()) return false;
+        // parts and rendering masks can only be refreshed by a full checking
+        LongSet renderMask = matchContext.getOrDefault("renderMask", LongSets.EMPTY_SET);
+        if (renderMask.contains(pos.asLong())) return false;
+        Set<IMultiPart> parts = matchContext.getOrDefault("parts", Collections.emptySet());
+        for (var part : parts) {
+            if (pos.equals(part.getPos())) return false;
+        }
+        if (!worldState.update(pos, predicate) || worldState.getBlockState().hasBlockEntity()) {
+            worldState.setError(null);
+            return false;
+        }
+        Long2ObjectMap<IO> ioMap = matchContext.getOrDefault("ioMap", Long2ObjectMaps.emptyMap());
+        var result = predicate.test(worldState) && worldState.io == ioMap.get(pos.asLong());
+        worldState.setError(null);
+        return result;
+    }
+
     public void autoBuild(Player player, MultiblockState worldState) {
         Level world = player.level();
         int minZ = -centerOffset[4];
@@ -475,6 +646,60 @@ public class BlockPattern {
     }
 
 
+    private Direction[] getActualFacings(Direction facing) {
+        var actualFacings = new Direction[3];
+        for (int i = 0; i < 3; i++) {
+            actualFacings[i] = structureDir[i].getActualFacing(facing);
+        }
+        return actualFacings;
+    }
+
+    /**
+     * Same as {@link #setActualRelativeOffset(int, int, int, Direction)} offset by the center, but set to the mutable pos.
+     */
+    private static BlockPos.MutableBlockPos setActualPos(BlockPos.MutableBlockPos result, Direction[] actualFacings, int x, int y, int z, BlockPos centerPos) {
+        int actualX = 0, actualY = 0, actualZ = 0;
+        for (int i = 0; i < 3; i++) {
+            var value = i == 0 ? x : i == 1 ? y : z;
+            switch (actualFacings[i]) {
+                case UP -> actualY = value;
+                case DOWN -> actualY = -value;
+                case WEST -> actualX = -value;
+                case EAST -> actualX = value;
+                case NORTH -> actualZ = -value;
+                case SOUTH -> actualZ = value;
+            }
+        }
+        return result.set(centerPos.getX() + actualX, centerPos.getY() + actualY, centerPos.getZ() + actualZ);
+    }
+
+    /**
+     * Capture the bounding box of all positions may be checked.
+     * @return null if the pattern is too small or too large for a snapshot.
+     */
+    @Nullable
+    private BlockStateSnapshot captureSnapshot(Level level, BlockPos centerPos, Direction[] actualFacings) {
+        if (ConfigHolder.patternSnapshotMinVolume <= 0) return null;
+        // aisles may start from minZ to maxZ, and repeat up to their max repetitions.
+        long maxLength = 0;
+        for (int[] repetition : aisleRepetitions) {
+            maxLength += repetition[1];
+        }
+        var minX = -centerOffset[0];
+        var minY = -centerOffset[1];
+        var minZ = -centerOffset[4];
+        var maxX = minX + palmLength - 1;
+        var maxY = minY + thumbLength - 1;
+        var maxZ = -centerOffset[3] + maxLength - 1;
+        var volume = (long) palmLength * thumbLength * (maxZ - minZ + 1);
+        if (volume < ConfigHolder.patternSnapshotMinVolume || volume > BlockStateSnapshot.MAX_VOLUME) return null;
+        var from = setActualPos(new BlockPos.MutableBlockPos(), actualFacings, minX, minY, minZ, centerPos);
+        var to = setActualPos(new BlockPos.MutableBlockPos(), actualFacings, maxX, maxY, (int) maxZ, centerPos);
+        return BlockStateSnapshot.capture(level,
+                Math.min(from.getX(), to.getX()), Math.min(from.getY(), to.getY()), Math.min(from.getZ(), to.getZ()),
+                Math.max(from.getX(), to.getX()), Math.max(from.getY(), to.getY()), Math.max(from.getZ(), to.getZ()));
+    }
+
     private BlockPos setActualRelativeOffset(int x, int y, int z, Direction facing) {
         int[] c0 = new int[]{x, y, z}, c1 = new int[3];
         for (int i = 0; i < 3; i++) {
@@ -4,23 +4,32 @@ import com.lowdragmc.mbd2.api.block.ProxyPartBlock;
 import com.lowdragmc.mbd2.api.capability.recipe.IO;
 import com.lowdragmc.mbd2.api.machine.IMachine;
 import com.lowdragmc.mbd2.api.machine.IMultiController;
+import com.lowdragmc.mbd2.api.machine.IMultiPart;
 import com.lowdragmc.mbd2.api.pattern.error.PatternError;
 import com.lowdragmc.mbd2.api.pattern.error.PatternStringError;
 import com.lowdragmc.mbd2.api.pattern.predicates.SimplePredicate;
+import com.lowdragmc.mbd2.api.pattern.util.BlockStateSnapshot;
 import com.lowdragmc.mbd2.api.pattern.util.PatternMatchContext;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.*;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import lombok.Getter;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.entity.BlockEntity;
 import net.minecraft.world.level.block.state.BlockState;
 
 import javax.annotation.Nullable;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public class MultiblockState {
@@ -48,9 +57,31 @@ public class MultiblockState {
     private boolean isInternalStructureForming;
     @Getter
     private boolean isInternalStructureInvaliding;
+    /**
+     * Increased once pattern checking starts.
+     */
+    @Getter
+    private int checkCount;
+    /**
+     * Changed positions waiting for {@link #onBlocksChanged()}.
+     */
+    private final LongOpenHashSet dirtyPositions = new LongOpenHashSet();
+    /**
+     * The snapshot of the pattern being checked, see {@link BlockPattern#checkPatternAt(MultiblockState, BlockPos, Direction, boolean)}.
+     */
+    @Nullable
+    private BlockStateSnapshot snapshot;
 
     // persist
     public LongOpenHashSet cache;
+    /**
+     * Block states of the cached positions when structure formed, and the counts of each block. see {@link #countBlocks()}.
+     */
+    @Nullable
+    private Long2ObjectOpenHashMap<BlockState> cachedStates;
+    private final Object2IntOpenHashMap<Block> blockCounts = new Object2IntOpenHashMap<>();
+    // hash of tags for persisted structures, 0 once tags changed. see getTagsFingerprint
+    private static volatile long tagsFingerprint;
 
     public MultiblockState(Level world, BlockPos controllerPos) {
         this.world = world;
@@ -60,9 +91,11 @@ public class MultiblockState {
     }
 
     protected void clean() {
+        this.checkCount++;
         this.matchContext.reset();
         this.globalCount = new HashMap<>();
         this.layerCount = new HashMap<>();
+        // always create a new one, the previous cache may be still indexed by MultiblockWorldSavedData
         cache = new LongOpenHashSet();
     }
 
@@ -73,6 +106,14 @@ public class MultiblockState {
         this.tileEntityInitialized = false;
         this.predicate = predicate;
         this.error = null;
+        if (snapshot != null && snapshot.contains(posIn)) {
+            this.blockState = snapshot.getBlockState(posIn);
+            if (this.blockState == null) {
+                error = UNLOAD_ERROR;
+                return false;
+            }
+            return true;
+        }
         if (!world.isLoaded(posIn)) {
             error = UNLOAD_ERROR;
             return false;
@@ -80,6 +121,15 @@ public class MultiblockState {
         return true;
     }
 
+    @Nullable
+    BlockStateSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(@Nullable BlockStateSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
     public IMultiController getController() {
         if (world.isLoaded(controllerPos)) {
             var machineOptional = IMachine.ofMachine(world, controllerPos);
@@ -126,6 +176,14 @@ public class MultiblockState {
         return this.tileEntity;
     }
 
+    /**
+     * Get the pos being checked, or where the last checking stopped.
+     */
+    @Nullable
+    BlockPos getCurrentPos() {
+        return pos;
+    }
+
     public BlockPos getPos() {
         return this.pos.immutable();
     }
@@ -133,7 +191,10 @@ public class MultiblockState {
     public BlockState getOffsetState(Direction face) {
         if (pos instanceof BlockPos.MutableBlockPos) {
             ((BlockPos.MutableBlockPos) pos).move(face);
-            BlockState blockState = world.getBlockState(pos);
+            BlockState blockState = snapshot != null && snapshot.contains(pos) ? snapshot.getBlockState(pos) : null;
+            if (blockState == null) {
+                blockState = world.getBlockState(pos);
+            }
             ((BlockPos.MutableBlockPos) pos).move(face.getOpposite());
             return blockState;
         }
@@ -152,51 +213,320 @@ public class MultiblockState {
         return cache.stream().map(BlockPos::of).collect(Collectors.toList());
     }
 
+    /**
+     * Count blocks of all cached positions, it should be called once structure formed.
+     * The counts will be updated by {@link #onBlockStateChanged(BlockPos, BlockState)} afterward.
+     */
+    public void countBlocks() {
+        var states = new Long2ObjectOpenHashMap<BlockState>(cache.size());
+        var mutablePos = new BlockPos.MutableBlockPos();
+        synchronized (blockCounts) {
+            blockCounts.clear();
+            for (var iterator = cache.iterator(); iterator.hasNext(); ) {
+                var pos = iterator.nextLong();
+                var state = world.getBlockState(mutablePos.set(pos));
+                states.put(pos, state);
+                blockCounts.addTo(state.getBlock(), 1);
+            }
+            cachedStates = states;
+        }
+    }
+
+    public void clearBlockCounts() {
+        synchronized (blockCounts) {
+            blockCounts.clear();
+            cachedStates = null;
+        }
+    }
+
+    /**
+     * Whether block counts are available, see {@link #countBlocks()}.
+     */
+    public boolean hasBlockCounts() {
+        return cachedStates != null;
+    }
+
+    /**
+     * Get the amount of the given block in the formed structure.
+     */
+    public int getBlockCount(Block block) {
+        synchronized (blockCounts) {
+            return blockCounts.getInt(block);
+        }
+    }
+
+    private void updateBlockCount(BlockPos pos, BlockState state) {
+        synchronized (blockCounts) {
+            if (cachedStates == null) return;
+            var oldState = cachedStates.get(pos.asLong());
+            if (oldState == null || oldState == state) return;
+            cachedStates.put(pos.asLong(), state);
+            var oldBlock = oldState.getBlock();
+            var newBlock = state.getBlock();
+            if (oldBlock == newBlock) return;
+            if (blockCounts.addTo(oldBlock, -1) <= 1) {
+                blockCounts.removeInt(oldBlock);
+            }
+            blockCounts.addTo(newBlock, 1);
+        }
+    }
+
+    private static long fingerprint(long pos, BlockState state) {
+        return HashCommon.mix(pos * 31 + Block.getId(state));
+    }
+
+    /**
+     * Should be called once tags are reloaded, e.g. by datapacks, persisted structures are restored only if tags are unchanged.
+     */
+    public static void onTagsUpdated() {
+        tagsFingerprint = 0;
+    }
+
+    /**
+     * Get a hash of all block and fluid tags, it's stable across restarts as long as tags are unchanged.
+     */
+    private static long getTagsFingerprint() {
+        var fingerprint = tagsFingerprint;
+        if (fingerprint == 0) {
+            fingerprint = (hashTags(BuiltInRegistries.BLOCK) * 31 + hashTags(BuiltInRegistries.FLUID)) | 1;
+            tagsFingerprint = fingerprint;
+        }
+        return fingerprint;
+    }
+
+    private static <T> long hashTags(Registry<T> registry) {
+        long hash = 0;
+        for (var iterator = registry.getTags().iterator(); iterator.hasNext(); ) {
+            var tag = iterator.next();
+            long tagHash = tag.getFirst().location().hashCode();
+            for (var holder : tag.getSecond()) {
+                tagHash += HashCommon.mix((long) holder.unwrapKey().map(key -> key.location().hashCode()).orElse(0));
+            }
+            hash += HashCommon.mix(tagHash);
+        }
+        return hash;
+    }
+
+    /**
+     * Save the formed structure, so that it can be restored by {@link #loadStructure(CompoundTag)} after reloading without checking the pattern.
+     * @return null if the structure isn't formed or its pattern can't be persisted.
+     */
+    @Nullable
+    public CompoundTag saveStructure() {
+        var controller = lastController;
+        if (controller == null || !controller.isFormed() || hasError() || cache == null) return null;
+        var signature = controller.getPatternSignature();
+        if (signature == 0) return null;
+        long blocks = 0;
+        synchronized (blockCounts) {
+            if (cachedStates == null) return null;
+            for (var entry : cachedStates.long2ObjectEntrySet()) {
+                blocks += fingerprint(entry.getLongKey(), entry.getValue());
+            }
+        }
+        var tag = new CompoundTag();
+        tag.putLong("signature", signature);
+        tag.putByte("facing", (byte) controller.getFrontFacing().map(Direction::ordinal).orElse(-1));
+        tag.putLongArray("cache", cache.toLongArray());
+        tag.putLong("blocks", blocks);
+        tag.putLong("tags", getTagsFingerprint());
+        Set<IMultiPart> parts = matchContext.getOrDefault("parts", Collections.emptySet());
+        tag.putLongArray("parts", parts.stream().mapToLong(part -> part.getPos().asLong()).toArray());
+        Long2ObjectMap<IO> ioMap = matchContext.getOrDefault("ioMap", Long2ObjectMaps.emptyMap());
+        var ioPositions = new long[ioMap.size()];
+        var ios = new byte[ioMap.size()];
+        var index = 0;
+        for (var entry : ioMap.long2ObjectEntrySet()) {
+            ioPositions[index] = entry.getLongKey();
+            ios[index++] = (byte) entry.getValue().ordinal();
+        }
+        tag.putLongArray("ioPositions", ioPositions);
+        tag.putByteArray("ios", ios);
+        LongSet renderMask = matchContext.getOrDefault("renderMask", LongSets.EMPTY_SET);
+        tag.putLongArray("renderMask", renderMask.toLongArray());
+        Map<Long, Set<String>> slots = matchContext.getOrDefault("slots", Long2ObjectMaps.emptyMap());
+        var slotsTag = new ListTag();
+        for (var entry : slots.entrySet()) {
+            var slotTag = new CompoundTag();
+            slotTag.putLong("pos", entry.getKey());
+            var names = new ListTag();
+            entry.getValue().forEach(name -> names.add(StringTag.valueOf(name)));
+            slotTag.put("names", names);
+            slotsTag.add(slotTag);
+        }
+        tag.put("slots", slotsTag);
+        return tag;
+    }
+
+    /**
+     * Restore the structure saved by {@link #saveStructure()} with a cheap validation instead of checking the pattern.
+     * <br>
+     * It only succeeds if the pattern and facing of the controller are unchanged, block and fluid tags are unchanged,
+     * all positions are loaded and hold the same block states, and all parts are present.
+     * Patterns matching block entity NBT are never persisted, see {@link BlockPattern#hasNBTPredicates()}.
+     * <br>
+     * Only persisted patterns (loaded from projects) can be restored, their predicates only store parts, io, slots and render masks into the match context.
+     * Predicates are not restored, so that the next block change will always check the whole pattern.
+     * @return true if restored, {@link IMultiController#onStructureFormed()} should be called then.
+     */
+    public boolean loadStructure(CompoundTag tag) {
+        var controller = getController();
+        if (controller == null) return false;
+        var signature = controller.getPatternSignature();
+        if (signature == 0 || tag.getLong("signature") != signature) return false;
+        if (tag.getByte("facing") != controller.getFrontFacing().map(Direction::ordinal).orElse(-1)) return false;
+        if (tag.getLong("tags") != getTagsFingerprint()) return false;
+        var positions = tag.getLongArray("cache");
+        var mutablePos = new BlockPos.MutableBlockPos();
+        long blocks = 0;
+        for (var pos : positions) {
+            if (!world.isLoaded(mutablePos.set(pos))) return false;
+            blocks += fingerprint(pos, world.getBlockState(mutablePos));
+        }
+        if (blocks != tag.getLong("blocks")) return false;
+        var parts = new HashSet<IMultiPart>();
+        for (var pos : tag.getLongArray("parts")) {
+            var part = IMultiPart.ofPart(world, BlockPos.of(pos));
+            if (part.isEmpty()) return false;
+            parts.add(part.get());
+        }
+        var ioPositions = tag.getLongArray("ioPositions");
+        var ios = tag.getByteArray("ios");
+        if (ioPositions.length != ios.length) return false;
+        // restore
+        clean();
+        cache.addAll(LongArrayList.wrap(positions));
+        matchContext.set("parts", parts);
+        var ioMap = new Long2ObjectOpenHashMap<IO>(ioPositions.length);
+        for (int i = 0; i < ioPositions.length; i++) {
+            ioMap.put(ioPositions[i], IO.values()[ios[i]]);
+        }
+        matchContext.set("ioMap", ioMap);
+        var renderMask = tag.getLongArray("renderMask");
+        if (renderMask.length > 0) {
+            matchContext.set("renderMask", new LongOpenHashSet(renderMask));
+        }
+        var slotsTag = tag.getList("slots", Tag.TAG_COMPOUND);
+        if (!slotsTag.isEmpty()) {
+            Map<Long, Set<String>> slots = new Long2ObjectArrayMap<>();
+            for (var element : slotsTag) {
+                var slotTag = (CompoundTag) element;
+                var names = new HashSet<String>();
+                slotTag.getList("names", Tag.TAG_STRING).forEach(name -> names.add(name.getAsString()));
+                slots.put(slotTag.getLong("pos"), names);
+            }
+            matchContext.set("slots", slots);
+        }
+        matchContext.set("pattern", controller.getPattern());
+        setError(null);
+        return true;
+    }
+
+    /**
+     * Queue a changed pos of the structure, it will be handled by {@link #onBlocksChanged()} later.
+     * @return true if the structure had no queued changes, it should be queued for {@link #onBlocksChanged()} then.
+     */
+    public boolean markBlockDirty(BlockPos pos) {
+        if ((isInternalStructureForming || isInternalStructureInvaliding) && !pos.equals(controllerPos)) {
+            // ignore changes caused by internal structure forming or invaliding
+            return false;
+        }
+        synchronized (dirtyPositions) {
+            var wasEmpty = dirtyPositions.isEmpty();
+            dirtyPositions.add(pos.asLong());
+            return wasEmpty;
+        }
+    }
+
+    /**
+     * Handle all queued changes, the structure will be checked at most once regardless of how many blocks changed.
+     */
+    public void onBlocksChanged() {
+        long[] positions;
+        synchronized (dirtyPositions) {
+            if (dirtyPositions.isEmpty()) return;
+            positions = dirtyPositions.toLongArray();
+            dirtyPositions.clear();
+        }
+        var changed = new BlockPos[positions.length];
+        var states = new BlockState[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            changed[i] = BlockPos.of(positions[i]);
+            states[i] = world.getBlockState(changed[i]);
+        }
+        onBlockStatesChanged(changed, states);
+    }
+
     public void onBlockStateChanged(BlockPos pos, BlockState state) {
+        onBlockStatesChanged(new BlockPos[]{pos}, new BlockState[]{state});
+    }
+
+    private void onBlockStatesChanged(BlockPos[] positions, BlockState[] states) {
         if (world instanceof ServerLevel serverLevel) {
-            if (pos.equals(controllerPos)) {
-                if (lastController != null) {
-                    if (!state.is(lastController.getBlockState().getBlock())) {
-                        lastController.onStructureInvalid();
-                        var mwsd = MultiblockWorldSavedData.getOrCreate(serverLevel);
-                        mwsd.removeMapping(this);
+            var needCheck = false;
+            for (int i = 0; i < positions.length; i++) {
+                var pos = positions[i];
+                var state = states[i];
+                updateBlockCount(pos, state);
+                if (pos.equals(controllerPos)) {
+                    if (lastController != null) {
+                        if (!state.is(lastController.getBlockState().getBlock())) {
+                            lastController.onStructureInvalid();
+                            var mwsd = MultiblockWorldSavedData.getOrCreate(serverLevel);
+                            mwsd.removeMapping(this);
+                            return;
+                        }
                     }
+                } else if (state.getBlock() != ProxyPartBlock.BLOCK) {
+                    // ignore if it's a proxy part block
+                    needCheck = true;
                 }
-            } else if (state.getBlock() == ProxyPartBlock.BLOCK) {
-                // ignore if it's a proxy part block
-            } else {
-                if (isInternalStructureForming || isInternalStructureInvaliding) {
-                    // ignore if it's internal structure forming or invaliding
+            }
+            if (!needCheck || isInternalStructureForming || isInternalStructureInvaliding) {
+                // ignore if it's internal structure forming or invaliding
+                return;
+            }
+            IMultiController controller = getController();
+            if (controller != null) {
+                // TODO vaBlocks
+//                if (controller.isFormed() && state.getBlock() instanceof ActiveBlock) {
+//                    LongSet activeBlocks = getMatchContext().getOrDefault("vaBlocks", LongSets.emptySet());
+//                    if (activeBlocks.contains(pos.asLong())) {
+//                        // fine! it's caused by active blocks.
+//                        // speed up here!
+//                        return;
+//                    }
+//                }
+                if (controller.isFormed() && checkBlocks(controller, positions, states)) {
+                    // fine! all blocks still match their predicates.
                     return;
                 }
-                IMultiController controller = getController();
-                if (controller != null) {
-                    // TODO vaBlocks
-//                    if (controller.isFormed() && state.getBlock() instanceof ActiveBlock) {
-//                        LongSet activeBlocks = getMatchContext().getOrDefault("vaBlocks", LongSets.emptySet());
-//                        if (activeBlocks.contains(pos.asLong())) {
-//                            // fine! it's caused by active blocks.
-//                            // speed up here!
-//                            return;
-//                        }
-//                    }
-                    if (controller.checkPatternWithLock()) {
-                        // refresh structure
-                        isInternalStructureForming = true;
-                        controller.onStructureFormed();
-                        isInternalStructureForming = false;
-                    } else {
-                        isInternalStructureInvaliding = true;
-                        // invalid structure
-                        controller.onStructureInvalid();
-                        isInternalStructureInvaliding = false;
-                        var mwsd = MultiblockWorldSavedData.getOrCreate(serverLevel);
-                        mwsd.removeMapping(this);
-                        mwsd.addAsyncLogic(controller);
-                    }
+                if (controller.checkPatternWithLock()) {
+                    // refresh structure
+                    isInternalStructureForming = true;
+                    controller.onStructureFormed();
+                    isInternalStructureForming = false;
+                    // positions may be changed
+                    MultiblockWorldSavedData.getOrCreate(serverLevel).addMapping(this);
+                } else {
+                    isInternalStructureInvaliding = true;
+                    // invalid structure
+                    controller.onStructureInvalid();
+                    isInternalStructureInvaliding = false;
+                    var mwsd = MultiblockWorldSavedData.getOrCreate(serverLevel);
+                    mwsd.removeMapping(this);
+                    mwsd.addAsyncLogic(controller);
                 }
             }
         }
     }
 
+    private boolean checkBlocks(IMultiController controller, BlockPos[] positions, BlockState[] states) {
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i].equals(controllerPos) || states[i].getBlock() == ProxyPartBlock.BLOCK) continue;
+            if (!controller.checkBlockWithLock(positions[i])) return false;
+        }
+        return true;
+    }
+
 }
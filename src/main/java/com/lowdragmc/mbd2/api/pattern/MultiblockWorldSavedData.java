@@ -2,22 +2,33 @@ package com.lowdragmc.mbd2.api.pattern;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.lowdragmc.lowdraglib.Platform;
-import com.lowdragmc.lowdraglib.async.AsyncThreadData;
 import com.lowdragmc.mbd2.MBD2;
 import com.lowdragmc.mbd2.api.machine.IMultiController;
 import com.lowdragmc.mbd2.common.machine.MBDMultiblockMachine;
+import com.lowdragmc.mbd2.config.ConfigHolder;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
 import lombok.Getter;
 import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.saveddata.SavedData;
+import org.apache.commons.lang3.ArrayUtils;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MultiblockWorldSavedData extends SavedData {
     @Getter
@@ -32,68 +43,221 @@ public class MultiblockWorldSavedData extends SavedData {
     public final Map<BlockPos, MultiblockState> mapping;
     /**
      * Structure Cache pos mapping.
+     * <br>
+     * The value is either a {@link MultiblockState} if the pos only belongs to one structure (common case), or an immutable {@link MultiblockState} array.
      */
-    public final Long2ObjectOpenHashMap<Set<MultiblockState>> structureCachePosMapping;
+    public final Long2ObjectOpenHashMap<Object> structureCachePosMapping;
+    /**
+     * Positions of each mapped structure, it's the {@link MultiblockState#cache} when it was mapped.
+     */
+    private final Map<MultiblockState, LongSet> mappedPositions;
     /**
      * Pos Cache of multiblock.
      */
     public final LongOpenHashSet posCache = new LongOpenHashSet();
+    /**
+     * Formed structures saved before reloading, they are taken by controllers once loaded. see {@link MultiblockState#saveStructure()}.
+     */
+    private final Long2ObjectOpenHashMap<CompoundTag> savedStructures = new Long2ObjectOpenHashMap<>();
 
     private MultiblockWorldSavedData(ServerLevel serverLevel) {
         this.serverLevel = serverLevel;
         this.mapping = new Object2ObjectOpenHashMap<>();
         this.structureCachePosMapping = new Long2ObjectOpenHashMap<>();
+        this.mappedPositions = new Reference2ObjectOpenHashMap<>();
     }
 
     private MultiblockWorldSavedData(ServerLevel serverLevel, CompoundTag tag) {
         this(serverLevel);
+        for (var element : tag.getList("structures", Tag.TAG_COMPOUND)) {
+            var structure = (CompoundTag) element;
+            savedStructures.put(structure.getLong("controller"), structure);
+        }
+    }
+
+    /**
+     * Take the saved structure of the controller, see {@link MultiblockState#loadStructure(CompoundTag)}.
+     * @return null if there is no saved structure.
+     */
+    @Nullable
+    public CompoundTag takeSavedStructure(BlockPos controllerPos) {
+        return savedStructures.remove(controllerPos.asLong());
     }
 
+    /**
+     * Get structures containing the given pos. The returned collection is a snapshot, it's safe to modify mappings while iterating it.
+     */
     public Collection<MultiblockState> getControllerInPos(BlockPos pos) {
-        return structureCachePosMapping.getOrDefault(pos.asLong(), Collections.emptySet());
+        var owners = structureCachePosMapping.get(pos.asLong());
+        if (owners == null) return Collections.emptyList();
+        if (owners instanceof MultiblockState state) return Collections.singletonList(state);
+        return Arrays.asList((MultiblockState[]) owners);
     }
 
     public void addMapping(MultiblockState state) {
+        // the structure may be re-mapped with a different cache after refreshing.
+        unmapPositions(state);
+        setDirty();
         this.mapping.put(state.controllerPos, state);
-        for (var blockPos : state.getCache()) {
-            structureCachePosMapping.computeIfAbsent(blockPos.asLong(), c-> new HashSet<>()).add(state);
+        // the cache is never modified after pattern checking, it's replaced by a new one while checking again.
+        var positions = state.cache;
+        if (positions == null) return;
+        mappedPositions.put(state, positions);
+        for (var iterator = positions.iterator(); iterator.hasNext(); ) {
+            var pos = iterator.nextLong();
+            var owners = structureCachePosMapping.get(pos);
+            if (owners == null) {
+                structureCachePosMapping.put(pos, state);
+            } else if (owners instanceof MultiblockState owner) {
+                if (owner != state) {
+                    structureCachePosMapping.put(pos, new MultiblockState[]{owner, state});
+                }
+            } else {
+                var array = (MultiblockState[]) owners;
+                if (!ArrayUtils.contains(array, state)) {
+                    structureCachePosMapping.put(pos, ArrayUtils.add(array, state));
+                }
+            }
         }
     }
 
     public void removeMapping(MultiblockState state) {
         this.mapping.remove(state.controllerPos);
-        var iterator = structureCachePosMapping.long2ObjectEntrySet().iterator();
-        while (iterator.hasNext()) {
-            var entry = iterator.next();
-            var stateSet = entry.getValue();
-            stateSet.remove(state);
-            if (stateSet.isEmpty()) {
-                iterator.remove();
+        setDirty();
+        unmapPositions(state);
+    }
+
+    private void unmapPositions(MultiblockState state) {
+        var positions = mappedPositions.remove(state);
+        if (positions == null) return;
+        for (var iterator = positions.iterator(); iterator.hasNext(); ) {
+            var pos = iterator.nextLong();
+            var owners = structureCachePosMapping.get(pos);
+            if (owners == state) {
+                structureCachePosMapping.remove(pos);
+            } else if (owners instanceof MultiblockState[] array) {
+                var index = ArrayUtils.indexOf(array, state);
+                if (index < 0) continue;
+                if (array.length == 2) {
+                    structureCachePosMapping.put(pos, array[1 - index]);
+                } else {
+                    structureCachePosMapping.put(pos, ArrayUtils.remove(array, index));
+                }
+            }
+        }
+    }
+
+    // ********************************* block changes ********************************* //
+    /**
+     * Structures with queued block changes, see {@link #flushBlockChanges()}.
+     */
+    private final Set<MultiblockState> dirtyStructures = new ReferenceLinkedOpenHashSet<>();
+
+    /**
+     * Queue a block change of the structure, it's safe to call from any thread.
+     */
+    public void onBlockChanged(MultiblockState state, BlockPos pos) {
+        if (state.markBlockDirty(pos)) {
+            synchronized (dirtyStructures) {
+                dirtyStructures.add(state);
             }
         }
     }
 
+    /**
+     * Handle queued block changes, it should be called on the server thread once per tick.
+     * Structures changed while flushing will be handled in the next flushing.
+     */
+    public void flushBlockChanges() {
+        MultiblockState[] states;
+        synchronized (dirtyStructures) {
+            if (dirtyStructures.isEmpty()) return;
+            states = dirtyStructures.toArray(MultiblockState[]::new);
+            dirtyStructures.clear();
+        }
+        for (var state : states) {
+            state.onBlocksChanged();
+        }
+    }
+
     @Nonnull
     @Override
     public CompoundTag save(@Nonnull CompoundTag compound) {
+        var structures = new ListTag();
+        for (var state : mapping.values()) {
+            var structure = state.saveStructure();
+            if (structure != null) {
+                structure.putLong("controller", state.controllerPos.asLong());
+                structures.add(structure);
+            }
+        }
+        // controllers which haven't been loaded since the last loading
+        for (var entry : savedStructures.long2ObjectEntrySet()) {
+            if (!mapping.containsKey(BlockPos.of(entry.getLongKey()))) {
+                structures.add(entry.getValue());
+            }
+        }
+        compound.put("structures", structures);
         return compound;
     }
 
     // ********************************* thread for searching ********************************* //
+    private static final long PERIOD = 250; // per 5 tick
+    /**
+     * Controllers are sharded by regions of 4x4 chunks, so that each worker keeps checking nearby chunks.
+     */
+    private static final int REGION_SHIFT = 6;
     private final CopyOnWriteArrayList<IMultiController> controllers = new CopyOnWriteArrayList<>();
+    private final Map<IMultiController, Backoff> backoffs = new ConcurrentHashMap<>();
     private ScheduledExecutorService executorService;
     private final static ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
             .setNameFormat("MBD2 Multiblock Async Thread-%d")
             .setDaemon(true)
             .build();
+    private final static ThreadFactory WORKER_THREAD_FACTORY = new ThreadFactoryBuilder()
+            .setNameFormat("MBD2 Multiblock Async Worker-%d")
+            .setDaemon(true)
+            .build();
+    @Nullable
+    private static ThreadPoolExecutor workers;
     private static final ThreadLocal<Boolean> IN_SERVICE = ThreadLocal.withInitial(()->false);
     @Getter
     private long periodID = Long.MIN_VALUE;
+    // statistics
+    private final AtomicLong skippedChecks = new AtomicLong();
+    private long periods, overruns, lastPeriodTime, maxPeriodTime, totalPeriodTime;
+
+    /**
+     * Backoff of a controller failing repeatedly with the same error.
+     */
+    private static final class Backoff {
+        private long signature;
+        private int failures;
+        private long nextPeriod;
+    }
 
     public void createExecutorService() {
         if (executorService != null && !executorService.isShutdown()) return;
         executorService = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
-        executorService.scheduleAtFixedRate(this::searchingTask, 0, 250, TimeUnit.MILLISECONDS); // per 5 tick
+        executorService.scheduleAtFixedRate(this::searchingTask, 0, PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ThreadPoolExecutor getWorkers() {
+        var threads = ConfigHolder.asyncPatternCheckThreads;
+        if (workers == null) {
+            workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), WORKER_THREAD_FACTORY);
+            workers.allowCoreThreadTimeOut(true);
+        } else if (workers.getMaximumPoolSize() != threads) {
+            // config reloaded
+            if (threads > workers.getMaximumPoolSize()) {
+                workers.setMaximumPoolSize(threads);
+                workers.setCorePoolSize(threads);
+            } else {
+                workers.setCorePoolSize(threads);
+                workers.setMaximumPoolSize(threads);
+            }
+        }
+        return workers;
     }
 
     /**
@@ -105,7 +269,9 @@ public class MultiblockWorldSavedData extends SavedData {
             // if it requires catalyst, don't add it to async logic.
             if (machine.getDefinition().multiblockSettings().catalyst().isEnable()) return;
         }
-        controllers.add(controller);
+        controllers.addIfAbsent(controller);
+        // it may be caused by changes of structure, check it as soon as possible.
+        backoffs.remove(controller);
         createExecutorService();
     }
 
@@ -114,6 +280,7 @@ public class MultiblockWorldSavedData extends SavedData {
      * @param controller controller
      */
     public void removeAsyncLogic(IMultiController controller) {
+        backoffs.remove(controller);
         if (controllers.contains(controller)) {
             controllers.remove(controller);
             if (controllers.isEmpty()) {
@@ -123,20 +290,117 @@ public class MultiblockWorldSavedData extends SavedData {
     }
 
     private void searchingTask() {
+        if (Platform.isServerNotSafe()) return;
+        var startTime = System.nanoTime();
+        var period = periodID;
         try {
-            if (Platform.isServerNotSafe()) return;
-            IN_SERVICE.set(true);
+            // group controllers by regions
+            var regions = new Long2ObjectLinkedOpenHashMap<List<IMultiController>>();
             for (var controller : controllers) {
-                controller.asyncCheckPattern(periodID);
+                var pos = controller.getPos();
+                regions.computeIfAbsent(ChunkPos.asLong(pos.getX() >> REGION_SHIFT, pos.getZ() >> REGION_SHIFT), r -> new ArrayList<>()).add(controller);
+            }
+            var threads = Math.min(ConfigHolder.asyncPatternCheckThreads, regions.size());
+            if (threads <= 1) {
+                checkShard(regions.values(), period);
+            } else {
+                List<List<List<IMultiController>>> shards = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    shards.add(new ArrayList<>());
+                }
+                for (var entry : regions.long2ObjectEntrySet()) {
+                    shards.get(Math.floorMod(HashCommon.long2int(HashCommon.mix(entry.getLongKey())), threads)).add(entry.getValue());
+                }
+                var tasks = new ArrayList<Callable<Void>>(threads);
+                for (var shard : shards) {
+                    if (shard.isEmpty()) continue;
+                    tasks.add(() -> {
+                        checkShard(shard, period);
+                        return null;
+                    });
+                }
+                for (var future : getWorkers().invokeAll(tasks)) {
+                    future.get();
+                }
             }
         } catch (Throwable e) {
             MBD2.LOGGER.error("asyncThreadLogic error: {}", e.getMessage());
         } finally {
-            IN_SERVICE.set(false);
+            recordPeriod(System.nanoTime() - startTime);
         }
         periodID++;
     }
 
+    private void checkShard(Collection<List<IMultiController>> regions, long period) {
+        IN_SERVICE.set(true);
+        try {
+            for (var region : regions) {
+                for (var controller : region) {
+                    var backoff = backoffs.get(controller);
+                    if (backoff != null && period < backoff.nextPeriod) {
+                        skippedChecks.incrementAndGet();
+                        continue;
+                    }
+                    var state = controller.getMultiblockState();
+                    var checkCount = state.getCheckCount();
+                    controller.asyncCheckPattern(period);
+                    if (state.getCheckCount() != checkCount) {
+                        updateBackoff(controller, state, period);
+                    }
+                }
+            }
+        } finally {
+            IN_SERVICE.set(false);
+        }
+    }
+
+    private void updateBackoff(IMultiController controller, MultiblockState state, long period) {
+        var error = state.error;
+        if (error == null) {
+            backoffs.remove(controller);
+            return;
+        }
+        var pos = state.getCurrentPos();
+        var signature = error.getSignature() * 31 + (pos == null ? 0 : pos.asLong());
+        var backoff = backoffs.computeIfAbsent(controller, c -> new Backoff());
+        if (backoff.signature == signature) {
+            backoff.failures = Math.min(backoff.failures + 1, 16);
+        } else {
+            backoff.signature = signature;
+            backoff.failures = 0;
+        }
+        // controllers are checked per 4 periods (1s) by default
+        backoff.nextPeriod = period + Math.min(4L << backoff.failures, ConfigHolder.asyncPatternCheckMaxBackoff * 4L);
+    }
+
+    private synchronized void recordPeriod(long duration) {
+        periods++;
+        lastPeriodTime = duration;
+        maxPeriodTime = Math.max(maxPeriodTime, duration);
+        totalPeriodTime += duration;
+        if (duration > TimeUnit.MILLISECONDS.toNanos(PERIOD)) {
+            overruns++;
+        }
+    }
+
+    /**
+     * Statistics of async pattern checking since the last reset.
+     */
+    public synchronized String getStatistics() {
+        return "controllers: %d, backing off: %d, periods: %d, overruns: %d, skipped checks: %d, last: %.2fms, avg: %.2fms, max: %.2fms".formatted(
+                controllers.size(), backoffs.size(), periods, overruns, skippedChecks.get(),
+                lastPeriodTime / 1e6, periods == 0 ? 0 : totalPeriodTime / 1e6 / periods, maxPeriodTime / 1e6);
+    }
+
+    public synchronized void resetStatistics() {
+        periods = 0;
+        overruns = 0;
+        lastPeriodTime = 0;
+        maxPeriodTime = 0;
+        totalPeriodTime = 0;
+        skippedChecks.set(0);
+    }
+
     public static boolean isThreadService() {
         return IN_SERVICE.get() && !Platform.isServerNotSafe();
     }
@@ -145,7 +409,6 @@ public class MultiblockWorldSavedData extends SavedData {
         if (executorService != null) {
             executorService.shutdownNow();
         }
-        AsyncThreadData
         executorService = null;
     }
 
@@ -5,6 +5,7 @@ import com.lowdragmc.mbd2.api.capability.recipe.IO;
 import com.lowdragmc.mbd2.api.pattern.predicates.SimplePredicate;
 import com.lowdragmc.lowdraglib.utils.BlockInfo;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.network.chat.Component;
 
@@ -228,6 +229,18 @@ public class TraceabilityPredicate {
         return !isAny() && !isAir() && this.common.size() + this.limited.size() == 1;
     }
 
+    /**
+     * Whether a block matched by it can be re-checked alone, see {@link BlockPattern#checkBlockAt(MultiblockState, BlockPos)}.
+     * Count limits, slot names and render masks depend on the whole structure.
+     */
+    public boolean isIncrementallyCheckable() {
+        if (!limited.isEmpty()) return false;
+        for (SimplePredicate predicate : common) {
+            if (predicate.disableRenderFormed || (predicate.slotName != null && !predicate.slotName.isEmpty())) return false;
+        }
+        return true;
+    }
+
     public boolean hasAir() {
         return this.common.contains(SimplePredicate.AIR);
     }
@@ -27,6 +27,13 @@ public class PatternError {
         return worldState.getPos();
     }
 
+    /**
+     * Errors with the same signature are considered as the same failure, e.g. to back off repeated async checking.
+     */
+    public long getSignature() {
+        return getClass().hashCode();
+    }
+
     public List<List<ItemStack>> getCandidates() {
         TraceabilityPredicate predicate = worldState.predicate;
         List<List<ItemStack>> candidates = new ArrayList<>();
@@ -9,6 +9,11 @@ public class PatternStringError extends PatternError{
         this.translateKey = translateKey;
     }
 
+    @Override
+    public long getSignature() {
+        return super.getSignature() * 31 + translateKey.hashCode();
+    }
+
     @Override
     public Component getErrorInfo() {
         return Component.translatable(translateKey);
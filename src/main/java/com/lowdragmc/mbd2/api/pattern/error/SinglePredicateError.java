@@ -16,6 +16,11 @@ public class SinglePredicateError extends PatternError {
         this.type = type;
     }
 
+    @Override
+    public long getSignature() {
+        return (super.getSignature() * 31 + System.identityHashCode(predicate)) * 31 + type;
+    }
+
     @Override
     public List<List<ItemStack>> getCandidates() {
         return Collections.singletonList(predicate.getCandidates());
@@ -27,6 +27,7 @@ import com.lowdragmc.mbd2.common.gui.editor.MultiblockMachineProject;
 import com.lowdragmc.mbd2.common.gui.editor.multiblock.MultiblockPatternPanel;
 import com.lowdragmc.mbd2.common.machine.definition.config.toggle.ToggleDirection;
 import com.lowdragmc.mbd2.integration.ldlib.MBDLDLibPlugin;
+import com.lowdragmc.mbd2.utils.NBTUtil;
 import it.unimi.dsi.fastutil.longs.Long2ObjectArrayMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.minecraft.client.Minecraft;
@@ -191,9 +192,7 @@ public class SimplePredicate implements IAutoPersistedSerializable, IConfigurabl
         if (!nbt.isEmpty() && !blockWorldState.world.isClientSide) {
             var te = blockWorldState.getTileEntity();
             if (te != null) {
-                var tag = te.saveWithFullMetadata();
-                var merged = tag.copy().merge(nbt);
-                if (!tag.equals(merged)) {
+                if (!NBTUtil.isSubset(nbt, te.saveWithFullMetadata())) {
                     blockWorldState.setError(new PatternStringError("The NBT fails to match"));
                     return false;
                 }
@@ -202,9 +201,7 @@ public class SimplePredicate implements IAutoPersistedSerializable, IConfigurabl
         if (!controllerNbt.isEmpty() && !blockWorldState.world.isClientSide) {
             var te = blockWorldState.getController().getHolder();
             if (te != null) {
-                var tag = te.saveWithFullMetadata();
-                var merged = tag.copy().merge(controllerNbt);
-                if (!tag.equals(merged)) {
+                if (!NBTUtil.isSubset(controllerNbt, te.saveWithFullMetadata())) {
                     blockWorldState.setError(new PatternStringError("The Controller NBT fails to match"));
                     return true;
                 }
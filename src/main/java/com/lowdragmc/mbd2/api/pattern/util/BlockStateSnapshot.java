@@ -0,0 +1,123 @@
+package com.lowdragmc.mbd2.api.pattern.util;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * A snapshot of block states in a box, captured from chunk sections at once. It's used to check large patterns without going through the world for each block.
+ * <br>
+ * Snapshots are reused per thread, {@link #release()} it once the checking is done.
+ */
+public final class BlockStateSnapshot {
+    /**
+     * The max volume of a snapshot, larger boxes should be checked against the world directly.
+     */
+    public static final int MAX_VOLUME = 1 << 20;
+    private static final ThreadLocal<BlockStateSnapshot> SNAPSHOTS = ThreadLocal.withInitial(BlockStateSnapshot::new);
+
+    private int minX, minY, minZ, sizeX, sizeY, sizeZ;
+    // null for positions in unloaded chunks or outside the build height
+    private BlockState[] states = new BlockState[0];
+    private boolean inUse;
+
+    private BlockStateSnapshot() {
+    }
+
+    /**
+     * Capture block states in the box (inclusive).
+     * @return null if the box is too large.
+     */
+    @Nullable
+    public static BlockStateSnapshot capture(Level level, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        var volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume <= 0 || volume > MAX_VOLUME) return null;
+        var snapshot = SNAPSHOTS.get();
+        if (snapshot.inUse) {
+            // nested checking in the same thread
+            snapshot = new BlockStateSnapshot();
+        }
+        snapshot.inUse = true;
+        snapshot.minX = minX;
+        snapshot.minY = minY;
+        snapshot.minZ = minZ;
+        snapshot.sizeX = maxX - minX + 1;
+        snapshot.sizeY = maxY - minY + 1;
+        snapshot.sizeZ = maxZ - minZ + 1;
+        if (snapshot.states.length < volume) {
+            snapshot.states = new BlockState[(int) volume];
+        }
+        snapshot.capture(level, maxX, maxY, maxZ);
+        return snapshot;
+    }
+
+    private void capture(Level level, int maxX, int maxY, int maxZ) {
+        var air = Blocks.AIR.defaultBlockState();
+        for (int chunkX = minX >> 4; chunkX <= maxX >> 4; chunkX++) {
+            for (int chunkZ = minZ >> 4; chunkZ <= maxZ >> 4; chunkZ++) {
+                var fromX = Math.max(minX, chunkX << 4);
+                var toX = Math.min(maxX, (chunkX << 4) + 15);
+                var fromZ = Math.max(minZ, chunkZ << 4);
+                var toZ = Math.min(maxZ, (chunkZ << 4) + 15);
+                var chunk = level.getChunkSource().getChunkNow(chunkX, chunkZ);
+                for (int y = minY; y <= maxY; y++) {
+                    if (chunk == null || level.isOutsideBuildHeight(y)) {
+                        fill(fromX, toX, y, fromZ, toZ, null);
+                        continue;
+                    }
+                    var section = chunk.getSection(chunk.getSectionIndex(y));
+                    if (section.hasOnlyAir()) {
+                        fill(fromX, toX, y, fromZ, toZ, air);
+                        continue;
+                    }
+                    for (int z = fromZ; z <= toZ; z++) {
+                        var index = index(fromX, y, z);
+                        for (int x = fromX; x <= toX; x++) {
+                            states[index++] = section.getBlockState(x & 15, y & 15, z & 15);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void fill(int fromX, int toX, int y, int fromZ, int toZ, @Nullable BlockState state) {
+        for (int z = fromZ; z <= toZ; z++) {
+            var index = index(fromX, y, z);
+            Arrays.fill(states, index, index + toX - fromX + 1, state);
+        }
+    }
+
+    private int index(int x, int y, int z) {
+        return ((y - minY) * sizeZ + (z - minZ)) * sizeX + (x - minX);
+    }
+
+    public boolean contains(BlockPos pos) {
+        var x = pos.getX() - minX;
+        var y = pos.getY() - minY;
+        var z = pos.getZ() - minZ;
+        return x >= 0 && y >= 0 && z >= 0 && x < sizeX && y < sizeY && z < sizeZ;
+    }
+
+    /**
+     * Get the block state of a pos in the box.
+     * @return null if the pos isn't loaded.
+     */
+    @Nullable
+    public BlockState getBlockState(BlockPos pos) {
+        return states[index(pos.getX(), pos.getY(), pos.getZ())];
+    }
+
+    /**
+     * Release the snapshot for reusing.
+     */
+    public void release() {
+        // don't hold block states of unloaded worlds
+        Arrays.fill(states, 0, sizeX * sizeY * sizeZ, null);
+        inUse = false;
+    }
+}
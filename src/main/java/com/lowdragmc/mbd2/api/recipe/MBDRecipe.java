@@ -48,6 +48,9 @@ public class MBDRecipe implements net.minecraft.world.item.crafting.Recipe<Conta
     @Getter
     public boolean isFuel;
     private Boolean hasTick;
+    private RecipeMatchPlan matchPlan;
+    private RecipeCondition[] andConditions;
+    private RecipeCondition[][] orConditions;
 
     public MBDRecipe(MBDRecipeType recipeType, ResourceLocation id, Map<RecipeCapability<?>, List<Content>> inputs, Map<RecipeCapability<?>, List<Content>> outputs, List<RecipeCondition> conditions, CompoundTag data, int duration, boolean isFuel, int priority) {
         this.recipeType = recipeType;
@@ -173,65 +176,166 @@ public class MBDRecipe implements net.minecraft.world.item.crafting.Recipe<Conta
 
     public ActionResult matchRecipe(boolean perTick, IO io, IRecipeCapabilityHolder holder, Map<RecipeCapability<?>, List<Content>> contents, boolean calculateExpectingRate) {
         Table<IO, RecipeCapability<?>, List<IRecipeHandler<?>>> capabilityProxies = holder.getRecipeCapabilitiesProxy();
-        for (Map.Entry<RecipeCapability<?>, List<Content>> entry : contents.entrySet()) {
-            Set<IRecipeHandler<?>> used = new HashSet<>();
-            List content = new ArrayList<>();
-            Map<String, List> contentSlot = new HashMap<>();
-            for (Content cont : entry.getValue()) {
-                if (cont.perTick != perTick) continue;
-                if (cont.slotName.isEmpty()) {
-                    content.add(cont.content);
+        for (var group : getMatchPlan().getGroups(contents, perTick)) {
+            List content = group.content();
+            Map<String, List> contentSlot = (Map) group.contentSlot();
+            RecipeCapability<?> capability = group.capability();
+
+            var simulated = simulateContentsInternal(io, capabilityProxies, capability, content, contentSlot);
+            if (Boolean.TRUE.equals(simulated)) continue;
+            // some handlers don't support simulation, match it by copying.
+            var result = simulated == null ? matchContentsInternal(io, capabilityProxies, capability, content, contentSlot) : null;
+            if (simulated == null && result == null) continue;
+
+            var expectingRate = 0f;
+            // TODO calculateExpectingRate
+//            if (calculateExpectingRate) {
+//                if (result.getA() != null) {
+//                    expectingRate = Math.max(capability.calculateAmount(result.getA()), expectingRate);
+//                }
+//                if (!result.getB().isEmpty()) {
+//                    for (var c : result.getB().values()) {
+//                        expectingRate = Math.max(capability.calculateAmount(c), expectingRate);
+//                    }
+//                }
+//            }
+            if (io == IO.NONE || io == IO.BOTH) return ActionResult.FAIL_NO_REASON;
+            return ActionResult.fail(() -> {
+                var reason = Component.translatable(io == IO.IN ? "mbd2.recipe_logic.insufficient_in" : "mbd2.recipe_logic.insufficient_out");
+                if (perTick) {
+                    reason.append("/t : ");
                 } else {
-                    contentSlot.computeIfAbsent(cont.slotName, s -> new ArrayList<>()).add(cont.content);
+                    reason.append(": ");
                 }
-            }
-            RecipeCapability<?> capability = entry.getKey();
-            content = content.stream().map(capability::copyContent).toList();
-            if (content.isEmpty() && contentSlot.isEmpty()) continue;
-            if (content.isEmpty()) content = null;
+                reason.append(capability.getTraslateComponent());
+                // the left contents are only computed while the reason is required.
+                var finalResult = result == null ? matchContentsInternal(io, capabilityProxies, capability, content, contentSlot) : result;
+                if (finalResult != null && finalResult.getA() != null) {
+                    reason.append("| miss: ");
+                    reason.append(capability.getLeftErrorInfo(finalResult.getA()));
+                }
+                if (finalResult != null && !finalResult.getB().isEmpty()) {
+                    for (var tuple : finalResult.getB().entrySet()) {
+                        reason.append("| slot (%s) miss: ".formatted(tuple.getKey()));
+                        reason.append(capability.getLeftErrorInfo(tuple.getValue()));
+                    }
+                }
+                return reason;
+            }, expectingRate);
+        }
+        return ActionResult.SUCCESS;
+    }
 
-            var result = handlerContentsInternal(io, io, capabilityProxies, capability, used, content, contentSlot, content, contentSlot, true);
-            if (result.getA() == null && result.getB().isEmpty()) continue;
-            result = handlerContentsInternal(IO.BOTH, io, capabilityProxies, capability, used, result.getA(), result.getB(), content, contentSlot, true);
+    /**
+     * Match the contents of a capability by handling copied contents in simulation.
+     * @return left contents, or null if all contents can be handled.
+     */
+    @Nullable
+    private Tuple<List, Map<String, List>> matchContentsInternal(IO io, Table<IO, RecipeCapability<?>, List<IRecipeHandler<?>>> capabilityProxies,
+                                                                 RecipeCapability<?> capability, List content, Map<String, List> contentSlot) {
+        Set<IRecipeHandler<?>> used = new HashSet<>();
+        List copied = content.isEmpty() ? null : content.stream().map(capability::copyContent).toList();
+        Map<String, List> copiedSlot = new HashMap<>(contentSlot);
+        var result = handlerContentsInternal(io, io, capabilityProxies, capability, used, copied, copiedSlot, copied, copiedSlot, true);
+        if (result.getA() == null && result.getB().isEmpty()) return null;
+        result = handlerContentsInternal(IO.BOTH, io, capabilityProxies, capability, used, result.getA(), result.getB(), copied, copiedSlot, true);
+        if (result.getA() == null && result.getB().isEmpty()) return null;
+        return result;
+    }
 
-            if (result.getA() != null || !result.getB().isEmpty()) {
-                var expectingRate = 0f;
-                // TODO calculateExpectingRate
-//                if (calculateExpectingRate) {
-//                    if (result.getA() != null) {
-//                        expectingRate = Math.max(capability.calculateAmount(result.getA()), expectingRate);
-//                    }
-//                    if (!result.getB().isEmpty()) {
-//                        for (var c : result.getB().values()) {
-//                            expectingRate = Math.max(capability.calculateAmount(c), expectingRate);
-//                        }
-//                    }
-//                }
-                if (io == IO.NONE || io == IO.BOTH) return ActionResult.FAIL_NO_REASON;
-                var finalResult = result;
-                return ActionResult.fail(() -> {
-                    var reason = Component.translatable(io == IO.IN ? "mbd2.recipe_logic.insufficient_in" : "mbd2.recipe_logic.insufficient_out");
-                    if (perTick) {
-                        reason.append("/t : ");
-                    } else {
-                        reason.append(": ");
+    /**
+     * Match the contents of a capability by {@link IRecipeHandler#simulateRecipe}, without copying contents or storages.
+     * <br>
+     * It follows the same order as {@link #handlerContentsInternal}.
+     * @return whether all contents can be handled, or null if any handler doesn't support simulation.
+     */
+    @Nullable
+    private Boolean simulateContentsInternal(IO io, Table<IO, RecipeCapability<?>, List<IRecipeHandler<?>>> capabilityProxies,
+                                             RecipeCapability<?> capability, List content, Map<String, List> contentSlot) {
+        var ledger = RecipeSimulationLedger.get();
+        Set<String> slotsLeft = contentSlot.isEmpty() ? Collections.emptySet() : new HashSet<>(contentSlot.keySet());
+        var contentLeft = !content.isEmpty();
+        // the frame of contents without slot name, left amounts are carried among undistinct handlers.
+        ledger.push(content.size());
+        try {
+            for (int pass = 0; pass < 2; pass++) {
+                if (!contentLeft && slotsLeft.isEmpty()) break;
+                var handlers = capabilityProxies.get(pass == 0 ? io : IO.BOTH, capability);
+                if (handlers == null) continue;
+                // handle distinct first
+                for (IRecipeHandler<?> handler : handlers) {
+                    if (!handler.isDistinct()) continue;
+                    var result = simulateFresh(handler, io, content, null, ledger);
+                    if (result == null) return null;
+                    if (result) {
+                        // check distinct slot handler
+                        if (!slotsLeft.isEmpty() && handler.getSlotNames().containsAll(slotsLeft)) {
+                            var success = true;
+                            for (var slotName : slotsLeft) {
+                                result = simulateFresh(handler, io, contentSlot.get(slotName), slotName, ledger);
+                                if (result == null) return null;
+                                if (!result) {
+                                    success = false;
+                                    break;
+                                }
+                            }
+                            if (success) slotsLeft.clear();
+                        }
+                        if (slotsLeft.isEmpty()) contentLeft = false;
                     }
-                    reason.append(capability.getTraslateComponent());
-                    if (finalResult.getA() != null) {
-                        reason.append("| miss: ");
-                        reason.append(capability.getLeftErrorInfo(finalResult.getA()));
+                    if (!contentLeft && slotsLeft.isEmpty()) break;
+                }
+                if (!contentLeft && slotsLeft.isEmpty()) break;
+                // handle undistinct later
+                for (IRecipeHandler<?> handler : handlers) {
+                    if (handler.isDistinct() || !ledger.use(handler)) continue;
+                    if (contentLeft) {
+                        if (!handler.simulateRecipe(io, this, content, null, ledger)) return null;
+                        contentLeft = !ledger.isAllDone();
                     }
-                    if (!finalResult.getB().isEmpty()) {
-                        for (var tuple : finalResult.getB().entrySet()) {
-                            reason.append("| slot (%s) miss: ".formatted(tuple.getKey()));
-                            reason.append(capability.getLeftErrorInfo(tuple.getValue()));
+                    var slotNames = handler.getSlotNames();
+                    if (!slotNames.isEmpty() && !slotsLeft.isEmpty()) {
+                        var iterator = slotsLeft.iterator();
+                        while (iterator.hasNext()) {
+                            var slotName = iterator.next();
+                            if (!slotNames.contains(slotName)) continue;
+                            var result = simulateFresh(handler, io, contentSlot.get(slotName), slotName, ledger);
+                            if (result == null) return null;
+                            if (result) iterator.remove();
                         }
                     }
-                    return reason;
-                }, expectingRate);
+                    if (!contentLeft && slotsLeft.isEmpty()) break;
+                }
             }
+            return !contentLeft && slotsLeft.isEmpty();
+        } finally {
+            ledger.pop();
+        }
+    }
+
+    /**
+     * Simulate the given contents by a handler in a new ledger frame.
+     * @return whether all contents can be handled, or null if the handler doesn't support simulation.
+     */
+    @Nullable
+    private Boolean simulateFresh(IRecipeHandler<?> handler, IO io, @Nullable List<?> contents, @Nullable String slotName, RecipeSimulationLedger ledger) {
+        if (contents == null || contents.isEmpty()) return true;
+        ledger.push(contents.size());
+        try {
+            if (!handler.simulateRecipe(io, this, contents, slotName, ledger)) return null;
+            return ledger.isAllDone();
+        } finally {
+            ledger.pop();
         }
-        return ActionResult.SUCCESS;
+    }
+
+    /**
+     * Whether the handler can handle all the given contents, it prefers {@link IRecipeHandler#simulateRecipe}.
+     */
+    private boolean canHandleContents(IRecipeHandler<?> handler, IO io, @Nullable List<?> contents, @Nullable String slotName) {
+        var result = simulateFresh(handler, io, contents, slotName, RecipeSimulationLedger.get());
+        if (result != null) return result;
+        return handler.handleRecipe(io, this, contents, slotName, true) == null;
     }
 
     public boolean handleTickRecipeIO(IO io, IRecipeCapabilityHolder holder) {
@@ -246,29 +350,30 @@ public class MBDRecipe implements net.minecraft.world.item.crafting.Recipe<Conta
 
     public boolean handleRecipe(boolean perTick, IO io, IRecipeCapabilityHolder holder, Map<RecipeCapability<?>, List<Content>> contents) {
         Table<IO, RecipeCapability<?>, List<IRecipeHandler<?>>> capabilityProxies = holder.getRecipeCapabilitiesProxy();
-        for (Map.Entry<RecipeCapability<?>, List<Content>> entry : contents.entrySet()) {
+        for (var group : getMatchPlan().getGroups(contents, perTick)) {
             Set<IRecipeHandler<?>> used = new HashSet<>();
-            List content = new ArrayList<>();
-            Map<String, List> contentSlot = new HashMap<>();
-            List contentSearch = new ArrayList<>();
-            Map<String, List> contentSlotSearch = new HashMap<>();
-            for (Content cont : entry.getValue()) {
-                if (cont.perTick != perTick) continue;
-                if (cont.slotName.isEmpty()) {
-                    contentSearch.add(cont.content);
-                } else {
-                    contentSlotSearch.computeIfAbsent(cont.slotName, s -> new ArrayList<>()).add(cont.content);
-                }
-                if (cont.chance >= 1 || MBD2.RND.nextFloat() < (cont.chance + holder.getChanceTier() * cont.tierChanceBoost)) { // chance input
-                    if (cont.slotName.isEmpty()) {
-                        content.add(cont.content);
-                    } else {
-                        contentSlot.computeIfAbsent(cont.slotName, s -> new ArrayList<>()).add(cont.content);
+            List contentSearch = group.content();
+            Map<String, List> contentSlotSearch = (Map) group.contentSlot();
+            List content;
+            Map<String, List> contentSlot;
+            if (group.hasChance()) {
+                content = new ArrayList<>();
+                contentSlot = new HashMap<>();
+                for (Content cont : group.contents()) {
+                    if (cont.chance >= 1 || MBD2.RND.nextFloat() < (cont.chance + holder.getChanceTier() * cont.tierChanceBoost)) { // chance input
+                        if (cont.slotName.isEmpty()) {
+                            content.add(cont.content);
+                        } else {
+                            contentSlot.computeIfAbsent(cont.slotName, s -> new ArrayList<>()).add(cont.content);
+                        }
                     }
                 }
+            } else {
+                // handlers copy contents before handling, the plan can be shared.
+                content = contentSearch;
+                contentSlot = new HashMap<>(contentSlotSearch);
             }
-            RecipeCapability<?> capability = entry.getKey();
-            content = content.stream().map(capability::copyContent).toList();
+            RecipeCapability<?> capability = group.capability();
             if (content.isEmpty() && contentSlot.isEmpty()) continue;
             if (content.isEmpty()) content = null;
 
@@ -296,14 +401,12 @@ public class MBDRecipe implements net.minecraft.world.item.crafting.Recipe<Conta
             for (IRecipeHandler<?> handler : handlers) {
                 if (!handler.isDistinct()) continue;
                 var slotNames = handler.getSlotNames();
-                var result = handler.handleRecipe(io, this, contentSearch, null, true);
-                if (result == null) {
+                if (canHandleContents(handler, io, contentSearch, null)) {
                     // check distinct slot handler
                     if (slotNames.containsAll(contentSlotSearch.keySet())) {
                         boolean success = true;
                         for (var entry : contentSlotSearch.entrySet()) {
-                            List<?> left = handler.handleRecipe(io, this, entry.getValue(), entry.getKey(), true);
-                            if (left != null) {
+                            if (!canHandleContents(handler, io, entry.getValue(), entry.getKey())) {
                                 success = false;
                                 break;
                             }
@@ -354,6 +457,17 @@ public class MBDRecipe implements net.minecraft.world.item.crafting.Recipe<Conta
         return new Tuple<>(content, contentSlot);
     }
 
+    /**
+     * Get the precompiled contents for matching and handling, it is built lazily.
+     */
+    public RecipeMatchPlan getMatchPlan() {
+        var plan = matchPlan;
+        if (plan == null) {
+            matchPlan = plan = new RecipeMatchPlan(this);
+        }
+        return plan;
+    }
+
     public boolean hasTick() {
         if (hasTick == null) {
             for (List<Content> contents : inputs.values()) {
@@ -417,22 +531,41 @@ public class MBDRecipe implements net.minecraft.world.item.crafting.Recipe<Conta
 
     public ActionResult checkConditions(@Nonnull RecipeLogic recipeLogic) {
         if (conditions.isEmpty()) return ActionResult.SUCCESS;
-        Map<String, List<RecipeCondition>> or = new HashMap<>();
-        for (RecipeCondition condition : conditions) {
-            if (condition.isOr()) {
-                or.computeIfAbsent(condition.getType(), type -> new ArrayList<>()).add(condition);
-            } else if (condition.test(this, recipeLogic) == condition.isReverse()) {
+        if (orConditions == null) {
+            groupConditions();
+        }
+        for (RecipeCondition condition : andConditions) {
+            if (recipeLogic.testCondition(condition, this) == condition.isReverse()) {
                 return ActionResult.fail(() -> Component.translatable("mbd2.recipe_logic.condition_fails").append(": ").append(condition.getTooltips()));
             }
         }
-        for (List<RecipeCondition> conditions : or.values()) {
-            if (conditions.stream().allMatch(condition -> condition.test(this, recipeLogic) == condition.isReverse())) {
-                return ActionResult.fail(() -> Component.translatable("mbd2.recipe_logic.condition_fails"));
+        loop:
+        for (RecipeCondition[] group : orConditions) {
+            for (RecipeCondition condition : group) {
+                if (recipeLogic.testCondition(condition, this) != condition.isReverse()) continue loop;
             }
+            return ActionResult.fail(() -> Component.translatable("mbd2.recipe_logic.condition_fails"));
         }
         return ActionResult.SUCCESS;
     }
 
+    /**
+     * Group conditions once, or-conditions of the same type are grouped together.
+     */
+    private void groupConditions() {
+        var and = new ArrayList<RecipeCondition>();
+        Map<String, List<RecipeCondition>> or = new LinkedHashMap<>();
+        for (RecipeCondition condition : conditions) {
+            if (condition.isOr()) {
+                or.computeIfAbsent(condition.getType(), type -> new ArrayList<>()).add(condition);
+            } else {
+                and.add(condition);
+            }
+        }
+        andConditions = and.toArray(RecipeCondition[]::new);
+        orConditions = or.values().stream().map(group -> group.toArray(RecipeCondition[]::new)).toArray(RecipeCondition[][]::new);
+    }
+
     /**
      *
      * @param isSuccess is action success
@@ -473,10 +606,66 @@ public class MBDRecipe implements net.minecraft.world.item.crafting.Recipe<Conta
         if (maxParallel == 1) {
             return Pair.of(recipe, 1);
         }
+        var estimated = recipe.estimateParallel(recipeCapabilityHolder, maxParallel);
+        if (estimated == 1) {
+            return Pair.of(recipe, 1);
+        } else if (estimated > 1) {
+            // the estimation is an upper bound, it's exact unless contents compete for the same storage.
+            var copied = recipe.copy(ContentModifier.multiplier(estimated), modifyDuration);
+            if (copied.matchRecipe(recipeCapabilityHolder).isSuccess() && copied.matchTickRecipe(recipeCapabilityHolder).isSuccess()) {
+                return Pair.of(copied, estimated);
+            }
+            maxParallel = estimated - 1;
+        }
         var parallel = tryParallel(recipeCapabilityHolder, recipe, 1, maxParallel, modifyDuration);
         return parallel == null ? Pair.of(recipe, 1) : parallel;
     }
 
+    /**
+     * Estimate the max parallel in one pass, by dividing the {@link IRecipeHandler#getCapacity} of handlers by the amount of each content.
+     * <br>
+     * It's an upper bound, contents sharing the same storage or distinct handlers may not reach it. Verify it by matching.
+     * @param holder recipe capability holder
+     * @param maxParallel max parallel limited
+     * @return estimated parallel within [1, maxParallel], or -1 if any capacity or amount is unknown.
+     */
+    public int estimateParallel(IRecipeCapabilityHolder holder, int maxParallel) {
+        if (!holder.hasProxies()) return -1;
+        var capabilityProxies = holder.getRecipeCapabilitiesProxy();
+        long parallel = maxParallel;
+        for (int i = 0; i < 4; i++) {
+            var io = i < 2 ? IO.IN : IO.OUT;
+            for (var group : getMatchPlan().getGroups(io == IO.IN ? inputs : outputs, (i & 1) == 1)) {
+                for (var content : group.contents()) {
+                    var limit = estimateParallel(io, capabilityProxies, group.capability(), content);
+                    if (limit < 0) return -1;
+                    parallel = Math.min(parallel, limit);
+                }
+            }
+        }
+        return (int) Math.max(parallel, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long estimateParallel(IO io, Table<IO, RecipeCapability<?>, List<IRecipeHandler<?>>> capabilityProxies, RecipeCapability<?> capability, Content content) {
+        var amount = ((RecipeCapability<Object>) capability).getAmount(content.content);
+        if (amount < 0) return -1;
+        if (amount == 0) return Long.MAX_VALUE;
+        var slotName = content.slotName.isEmpty() ? null : content.slotName;
+        long capacity = 0;
+        for (var handlerIO : new IO[]{io, IO.BOTH}) {
+            var handlers = capabilityProxies.get(handlerIO, capability);
+            if (handlers == null) continue;
+            for (IRecipeHandler<?> handler : handlers) {
+                if (slotName != null && !handler.getSlotNames().contains(slotName)) continue;
+                var handled = handler.getCapacity(io, content.content, slotName);
+                if (handled < 0) return -1;
+                capacity = handled >= Long.MAX_VALUE - capacity ? Long.MAX_VALUE : capacity + handled;
+            }
+        }
+        return capacity / amount;
+    }
+
     @Nullable
     private static Pair<MBDRecipe, Integer> tryParallel(IRecipeCapabilityHolder recipeCapabilityHolder, MBDRecipe original, int min, int max, boolean modifyDuration) {
         if (min > max) return null;
@@ -10,10 +10,12 @@ import com.lowdragmc.lowdraglib.jei.IngredientIO;
 import com.lowdragmc.lowdraglib.syncdata.ITagSerializable;
 import com.lowdragmc.lowdraglib.utils.Size;
 import com.lowdragmc.mbd2.MBD2;
+import com.lowdragmc.mbd2.api.capability.recipe.ContentHasher;
 import com.lowdragmc.mbd2.api.capability.recipe.IO;
 import com.lowdragmc.mbd2.api.capability.recipe.IRecipeCapabilityHolder;
 import com.lowdragmc.mbd2.api.capability.recipe.RecipeCapability;
 import com.lowdragmc.mbd2.api.recipe.content.Content;
+import com.lowdragmc.mbd2.config.ConfigHolder;
 import com.lowdragmc.mbd2.core.mixins.RecipeManagerAccessor;
 import com.lowdragmc.mbd2.utils.FormattingUtil;
 import com.lowdragmc.mbd2.utils.WidgetUtils;
@@ -85,9 +87,20 @@ public class MBDRecipeType implements RecipeType<MBDRecipe>, ITagSerializable<Co
 
     // run-time
     @Getter
-    private boolean isProxyRecipesLoaded = false;
+    private volatile boolean isProxyRecipesLoaded = false;
     @Getter
     protected final Map<RecipeType<?>, List<MBDRecipe>> proxyRecipes = new HashMap<>();
+    @Getter
+    private volatile RecipeIndex recipeIndex = RecipeIndex.EMPTY;
+    /**
+     * Fuel recipes sorted by priority.
+     */
+    @Getter
+    private volatile List<MBDRecipe> fuelRecipes = Collections.emptyList();
+    @Getter
+    private volatile RecipeIndex fuelRecipeIndex = RecipeIndex.EMPTY;
+    @Getter
+    private final RecipeSearchCache searchCache = new RecipeSearchCache();
 
     public MBDRecipeType(ResourceLocation registryName, RecipeType<?>... proxyRecipes) {
         this.registryName = registryName;
@@ -100,45 +113,101 @@ public class MBDRecipeType implements RecipeType<MBDRecipe>, ITagSerializable<Co
         return registryName.toString();
     }
 
-    private void loadProxyRecipes(RecipeManager recipeManager) {
-        isProxyRecipesLoaded = true;
+    /**
+     * Called once recipes of the {@link RecipeManager} are reloaded.
+     * <br>
+     * Proxy recipes and the {@link RecipeIndex} will be rebuilt lazily while searching recipes next time.
+     */
+    public void onRecipesReloaded() {
+        isProxyRecipesLoaded = false;
+        searchCache.clear();
+    }
+
+    private synchronized void loadProxyRecipes(RecipeManager recipeManager) {
+        if (isProxyRecipesLoaded) return;
         proxyRecipes.clear();
         for (var type : proxyRecipeTypes) {
             var recipes = new ArrayList<MBDRecipe>();
-            for (var recipe : ((RecipeManagerAccessor)recipeManager).getRawRecipes().get(type).entrySet()) {
-                var mbdRecipe = toMBDrecipe(recipe.getKey(), recipe.getValue());
-                if (mbdRecipe != null) recipes.add(mbdRecipe);
+            var rawRecipes = ((RecipeManagerAccessor)recipeManager).getRawRecipes().get(type);
+            if (rawRecipes != null) {
+                for (var recipe : rawRecipes.entrySet()) {
+                    var mbdRecipe = toMBDrecipe(recipe.getKey(), recipe.getValue());
+                    if (mbdRecipe != null) recipes.add(mbdRecipe);
+                }
             }
             proxyRecipes.put(type, recipes);
         }
+        buildRecipeIndex(recipeManager);
+        // drop results searched from the previous recipes.
+        searchCache.clear();
+        isProxyRecipesLoaded = true;
+    }
+
+    private void buildRecipeIndex(RecipeManager recipeManager) {
+        var recipes = new ArrayList<MBDRecipe>();
+        var fuels = new ArrayList<MBDRecipe>();
+        for (MBDRecipe recipe : recipeManager.getAllRecipesFor(this)) {
+            (recipe.isFuel ? fuels : recipes).add(recipe);
+        }
+        fuels.sort(Comparator.comparingInt(r -> r.priority));
+        fuelRecipes = Collections.unmodifiableList(fuels);
+        fuelRecipeIndex = new RecipeIndex(fuels);
+        for (List<MBDRecipe> proxy : proxyRecipes.values()) {
+            for (MBDRecipe recipe : proxy) {
+                if (!recipe.isFuel) recipes.add(recipe);
+            }
+        }
+        recipeIndex = new RecipeIndex(recipes);
     }
 
     public List<MBDRecipe> searchFuelRecipe(RecipeManager recipeManager, IRecipeCapabilityHolder holder) {
         if (!isProxyRecipesLoaded) loadProxyRecipes(recipeManager);
         if (!holder.hasProxies() || !isRequireFuelForWorking()) return Collections.emptyList();
         List<MBDRecipe> matches = new ArrayList<>();
-        for (MBDRecipe recipe : recipeManager.getAllRecipesFor(this)) {
-            if (recipe.isFuel && recipe.matchRecipe(holder).isSuccess() && recipe.matchTickRecipe(holder).isSuccess()) {
+        // candidates keep the priority order of fuelRecipes.
+        for (MBDRecipe recipe : fuelRecipeIndex.getCandidates(holder)) {
+            if (recipe.matchRecipe(holder).isSuccess() && recipe.matchTickRecipe(holder).isSuccess()) {
                 matches.add(recipe);
             }
         }
-        matches.sort(Comparator.comparingInt(r -> r.priority));
         return matches;
     }
 
     public List<MBDRecipe> searchRecipe(RecipeManager recipeManager, IRecipeCapabilityHolder holder) {
+        Long fingerprint = null;
+        if (ConfigHolder.recipeSearchCacheSize > 0 && holder.hasProxies()) {
+            var hasher = new ContentHasher();
+            if (hasher.putHolder(holder)) {
+                fingerprint = hasher.getHash();
+            }
+        }
+        return searchRecipe(recipeManager, holder, fingerprint);
+    }
+
+    /**
+     * Search recipes with the content fingerprint computed by the caller, see {@link ContentHasher#putHolder(IRecipeCapabilityHolder)}.
+     * @param fingerprint null if the holder can't be hashed, then the results are not cached.
+     */
+    public List<MBDRecipe> searchRecipe(RecipeManager recipeManager, IRecipeCapabilityHolder holder, @Nullable Long fingerprint) {
         if (!isProxyRecipesLoaded) loadProxyRecipes(recipeManager);
         if (!holder.hasProxies()) return Collections.emptyList();
-        List<MBDRecipe> matches = recipeManager.getAllRecipesFor(this).parallelStream()
-                .filter(recipe -> !recipe.isFuel && recipe.matchRecipe(holder).isSuccess() && recipe.matchTickRecipe(holder).isSuccess())
-                .collect(Collectors.toList());
-        for (List<MBDRecipe> recipes : proxyRecipes.values()) {
-            var found = recipes.parallelStream()
-                    .filter(recipe -> !recipe.isFuel && recipe.matchRecipe(holder).isSuccess() && recipe.matchTickRecipe(holder).isSuccess())
-                    .toList();
-            matches.addAll(found);
+        // holders with identical contents share the searched results.
+        if (ConfigHolder.recipeSearchCacheSize <= 0) {
+            fingerprint = null;
+        } else if (fingerprint != null) {
+            var cached = searchCache.get(fingerprint);
+            if (cached != null) return cached;
         }
+        var generation = searchCache.getGeneration();
+        // only match recipes whose indexed inputs are held by the holder.
+        // it is already called in the searching threads, don't split it into the common pool.
+        List<MBDRecipe> matches = recipeIndex.getCandidates(holder).stream()
+                .filter(recipe -> recipe.matchRecipe(holder).isSuccess() && recipe.matchTickRecipe(holder).isSuccess())
+                .collect(Collectors.toList());
         matches.sort(Comparator.comparingInt(r -> r.priority));
+        if (fingerprint != null) {
+            searchCache.put(fingerprint, matches, generation);
+        }
         return matches;
     }
 
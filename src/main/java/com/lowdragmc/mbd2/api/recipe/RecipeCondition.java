@@ -25,6 +25,24 @@ import javax.annotation.Nullable;
 @Accessors(chain = true)
 public abstract class RecipeCondition implements IConfigurable {
 
+    /**
+     * How often the result of a condition may change, {@link RecipeLogic} caches results until the source changed.
+     */
+    public enum Volatility {
+        /**
+         * Never changes for a placed machine, e.g. dimension, biome.
+         */
+        STATIC,
+        /**
+         * Changes with the weather of the level.
+         */
+        WEATHER,
+        /**
+         * May change at any tick, it is never cached.
+         */
+        TICK
+    }
+
     @Nullable
     public static RecipeCondition create(Class<? extends RecipeCondition> clazz) {
         if (clazz == null) return null;
@@ -55,6 +73,13 @@ public abstract class RecipeCondition implements IConfigurable {
 
     public abstract boolean test(@Nonnull MBDRecipe recipe, @Nonnull RecipeLogic recipeLogic);
 
+    /**
+     * Get the volatility of the result, override it if the result doesn't change per tick.
+     */
+    public Volatility getVolatility() {
+        return Volatility.TICK;
+    }
+
     public IGuiTexture getIcon() {
         return new ResourceTexture("mbd2:textures/gui/condition/" + getType() + ".png");
     }
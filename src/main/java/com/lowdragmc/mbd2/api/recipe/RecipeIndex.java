@@ -0,0 +1,125 @@
+package com.lowdragmc.mbd2.api.recipe;
+
+import com.lowdragmc.mbd2.api.capability.recipe.IO;
+import com.lowdragmc.mbd2.api.capability.recipe.IRecipeCapabilityHolder;
+import com.lowdragmc.mbd2.api.capability.recipe.IRecipeHandler;
+import com.lowdragmc.mbd2.api.capability.recipe.RecipeCapability;
+import com.lowdragmc.mbd2.api.recipe.content.Content;
+import it.unimi.dsi.fastutil.objects.Reference2LongMap;
+import it.unimi.dsi.fastutil.objects.Reference2LongMaps;
+import it.unimi.dsi.fastutil.objects.Reference2LongOpenHashMap;
+
+import java.util.*;
+
+/**
+ * An inverted index of recipes, it maps the lookup keys of recipe inputs (e.g. item, fluid, entity type) to the recipes requiring them.
+ * <br>
+ * It is only a pre-filter for {@link MBDRecipeType#searchRecipe}, candidates still have to be matched by {@link MBDRecipe#matchRecipe(IRecipeCapabilityHolder)}.
+ * A recipe is a candidate if every indexable input content has at least one of its keys held by the machine.
+ * <br>
+ * The index is immutable once built, it is safe to be used in the async searching threads.
+ */
+public class RecipeIndex {
+    public static final RecipeIndex EMPTY = new RecipeIndex(Collections.emptyList());
+
+    /**
+     * The max indexable contents of a recipe, contents beyond it are not used for filtering.
+     */
+    private static final int MAX_INDEXED_CONTENTS = Long.SIZE;
+
+    private record Entry(MBDRecipe recipe, long fullMask) {}
+
+    private record Node(Entry entry, long bit) {}
+
+    private final Map<Object, List<Node>> keyNodes = new HashMap<>();
+    private final Map<RecipeCapability<?>, List<Node>> capabilityNodes = new HashMap<>();
+    private final List<MBDRecipe> unindexed = new ArrayList<>();
+    private final Map<MBDRecipe, Integer> ordinals = new IdentityHashMap<>();
+
+    public RecipeIndex(Collection<MBDRecipe> recipes) {
+        var ordinal = 0;
+        var keys = new HashSet<>();
+        for (var recipe : recipes) {
+            ordinals.put(recipe, ordinal);
+            var nodes = new ArrayList<Map.Entry<RecipeCapability<?>, Set<Object>>>();
+            for (var entry : recipe.inputs.entrySet()) {
+                for (Content content : entry.getValue()) {
+                    if (nodes.size() >= MAX_INDEXED_CONTENTS) break;
+                    keys.clear();
+                    if (collectKeys(entry.getKey(), content.content, keys) && !keys.isEmpty()) {
+                        nodes.add(Map.entry(entry.getKey(), new HashSet<>(keys)));
+                    }
+                }
+            }
+            if (nodes.isEmpty()) {
+                unindexed.add(recipe);
+            } else {
+                var fullMask = nodes.size() == Long.SIZE ? -1L : (1L << nodes.size()) - 1;
+                var indexed = new Entry(recipe, fullMask);
+                for (int i = 0; i < nodes.size(); i++) {
+                    var node = new Node(indexed, 1L << i);
+                    capabilityNodes.computeIfAbsent(nodes.get(i).getKey(), c -> new ArrayList<>()).add(node);
+                    for (var key : nodes.get(i).getValue()) {
+                        keyNodes.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+                    }
+                }
+            }
+            ordinal++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean collectKeys(RecipeCapability<?> capability, Object content, Set<Object> keys) {
+        return ((RecipeCapability<Object>) capability).collectIndexKeys(content, keys::add);
+    }
+
+    /**
+     * The amount of recipes in this index.
+     */
+    public int size() {
+        return ordinals.size();
+    }
+
+    /**
+     * Get candidate recipes for the given holder, in the same order as they were indexed.
+     * <br>
+     * If a handler of the holder can't enumerate its contents, all contents of its capability are treated as present.
+     */
+    public List<MBDRecipe> getCandidates(IRecipeCapabilityHolder holder) {
+        if (ordinals.isEmpty()) return Collections.emptyList();
+        var proxies = holder.getRecipeCapabilitiesProxy();
+        var heldKeys = new HashSet<>();
+        var unknownCapabilities = new HashSet<RecipeCapability<?>>();
+        for (var io : new IO[]{IO.IN, IO.BOTH}) {
+            for (var entry : proxies.row(io).entrySet()) {
+                for (IRecipeHandler<?> handler : entry.getValue()) {
+                    if (!handler.collectIndexKeys(heldKeys::add)) {
+                        unknownCapabilities.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        Reference2LongMap<Entry> masks = new Reference2LongOpenHashMap<>();
+        for (var capability : unknownCapabilities) {
+            for (var node : capabilityNodes.getOrDefault(capability, Collections.emptyList())) {
+                masks.put(node.entry, masks.getLong(node.entry) | node.bit);
+            }
+        }
+        for (var key : heldKeys) {
+            var nodes = keyNodes.get(key);
+            if (nodes == null) continue;
+            for (var node : nodes) {
+                masks.put(node.entry, masks.getLong(node.entry) | node.bit);
+            }
+        }
+        var candidates = new ArrayList<MBDRecipe>(unindexed.size() + masks.size());
+        candidates.addAll(unindexed);
+        for (var entry : Reference2LongMaps.fastIterable(masks)) {
+            if (entry.getLongValue() == entry.getKey().fullMask) {
+                candidates.add(entry.getKey().recipe);
+            }
+        }
+        candidates.sort(Comparator.comparingInt(recipe -> ordinals.getOrDefault(recipe, Integer.MAX_VALUE)));
+        return candidates;
+    }
+}
@@ -2,16 +2,21 @@ package com.lowdragmc.mbd2.api.recipe;
 
 import com.lowdragmc.lowdraglib.Platform;
 import com.lowdragmc.lowdraglib.syncdata.IEnhancedManaged;
+import com.lowdragmc.lowdraglib.syncdata.ISubscription;
 import com.lowdragmc.lowdraglib.syncdata.annotation.DescSynced;
 import com.lowdragmc.lowdraglib.syncdata.annotation.Persisted;
 import com.lowdragmc.lowdraglib.syncdata.annotation.RequireRerender;
 import com.lowdragmc.lowdraglib.syncdata.field.FieldManagedStorage;
 import com.lowdragmc.lowdraglib.syncdata.field.ManagedFieldHolder;
+import com.lowdragmc.mbd2.api.capability.recipe.ContentHasher;
 import com.lowdragmc.mbd2.api.capability.recipe.IO;
+import com.lowdragmc.mbd2.api.capability.recipe.IRecipeHandler;
+import com.lowdragmc.mbd2.api.capability.recipe.IRecipeHandlerTrait;
+import com.lowdragmc.mbd2.api.capability.recipe.RecipeHandlerSlotsProxy;
 import com.lowdragmc.mbd2.api.machine.IMachine;
 import com.lowdragmc.mbd2.config.ConfigHolder;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import lombok.Getter;
-import net.minecraft.Util;
 import net.minecraft.network.chat.Component;
 import net.minecraft.world.item.crafting.RecipeManager;
 import org.jetbrains.annotations.VisibleForTesting;
@@ -19,12 +24,14 @@ import org.jetbrains.annotations.VisibleForTesting;
 import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 public class RecipeLogic implements IEnhancedManaged {
     @Getter
     private final FieldManagedStorage syncStorage = new FieldManagedStorage(this);
     public static final ManagedFieldHolder MANAGED_FIELD_HOLDER = new ManagedFieldHolder(RecipeLogic.class);
+    private static final int MAX_CACHED_CONDITIONS = 256;
     @Override
     public ManagedFieldHolder getFieldHolder() {
         return MANAGED_FIELD_HOLDER;
@@ -46,6 +53,10 @@ public class RecipeLogic implements IEnhancedManaged {
     @Getter
     public final IMachine machine;
     public List<MBDRecipe> lastFailedMatches;
+    /**
+     * Cached results of recipe conditions, see {@link #testCondition(RecipeCondition, MBDRecipe)}.
+     */
+    private final Map<RecipeCondition, CachedCondition> conditionCache = new Reference2ObjectOpenHashMap<>();
 
     @Getter @Persisted @DescSynced @RequireRerender
     private Status status = Status.IDLE;
@@ -72,13 +83,44 @@ public class RecipeLogic implements IEnhancedManaged {
     protected int fuelTime;
     @Getter @Persisted
     protected int fuelMaxTime;
+    /**
+     * The last burnt fuel recipe, it will be tried first while refueling.
+     */
+    @Nullable
+    protected MBDRecipe lastFuelRecipe;
+    // the fuel recipes which lastFuelRecipe comes from, it is outdated once recipes reloaded.
+    private List<MBDRecipe> lastFuelRecipes;
     @Getter(onMethod_ = @VisibleForTesting)
     protected boolean recipeDirty;
     @Persisted
     @Getter
     protected long totalContinuousRunningTime;
+    /**
+     * The in-flight async searching, there is at most one per machine.
+     */
     @Nullable
     protected CompletableFuture<List<MBDRecipe>> completableFuture = null;
+    /**
+     * Whether the last async searching was rejected by {@link RecipeSearchExecutor} and should be retried.
+     */
+    protected boolean searchingDeferred;
+    /**
+     * Whether the idle machine stops searching recipes until one of its recipe handlers changed.
+     */
+    @Getter
+    protected boolean isSleeping;
+    protected long sleepingSince;
+    /**
+     * Whether anything changed since the last searching began, the result of that searching is stale then, and the machine shouldn't sleep on it.
+     */
+    private boolean changedSinceSearching;
+    private final List<ISubscription> handlerSubscriptions = new ArrayList<>();
+
+    // statistics of the last server tick, only accessed on the server thread.
+    private static int statisticsTick = -1;
+    private static int sleepingCounter, awakeCounter;
+    @Getter
+    private static int sleepingMachines, awakeMachines;
 
     public RecipeLogic(IMachine machine) {
         this.machine = machine;
@@ -88,6 +130,7 @@ public class RecipeLogic implements IEnhancedManaged {
      * Call it to abort current recipe and reset the first state.
      */
     public void resetRecipeLogic() {
+        conditionCache.clear();
         recipeDirty = false;
         lastRecipe = null;
         lastOriginRecipe = null;
@@ -96,6 +139,7 @@ public class RecipeLogic implements IEnhancedManaged {
         fuelTime = 0;
         lastFailedMatches = null;
         setStatus(Status.IDLE);
+        wakeUp();
     }
 
     public double getProgressPercent() {
@@ -121,6 +165,7 @@ public class RecipeLogic implements IEnhancedManaged {
     }
 
     public void serverTick() {
+        recordStatistics();
         if (!isSuspend()) {
             if (!isIdle() && lastRecipe != null) {
                 if (progress < duration) {
@@ -131,13 +176,14 @@ public class RecipeLogic implements IEnhancedManaged {
                 }
             } else if (lastRecipe != null) {
                 findAndHandleRecipe();
-            } else if (getMachine().getOffsetTimer() % 5 == 0) {
+            } else if (getMachine().getOffsetTimer() % 5 == 0 && !keepSleeping()) {
                 findAndHandleRecipe();
                 if (lastFailedMatches != null) {
                     for (MBDRecipe match : lastFailedMatches) {
                         if (checkMatchedRecipeAvailable(match)) break;
                     }
                 }
+                trySleep();
             }
         }
         if (fuelTime > 0) {
@@ -152,6 +198,132 @@ public class RecipeLogic implements IEnhancedManaged {
         }
     }
 
+    private void recordStatistics() {
+        var server = Platform.getMinecraftServer();
+        if (server == null) return;
+        if (statisticsTick != server.getTickCount()) {
+            statisticsTick = server.getTickCount();
+            sleepingMachines = sleepingCounter;
+            awakeMachines = awakeCounter;
+            sleepingCounter = 0;
+            awakeCounter = 0;
+        }
+        if (isSleeping) {
+            sleepingCounter++;
+        } else {
+            awakeCounter++;
+        }
+    }
+
+    /**
+     * @return whether the machine is still sleeping. It will be woken up if the fallback interval is reached.
+     */
+    protected boolean keepSleeping() {
+        if (!isSleeping) return false;
+        if (getMachine().getOffsetTimer() - sleepingSince >= ConfigHolder.recipeLogicSleepFallbackInterval) {
+            wakeUp();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Put the idle machine into sleep if nothing was found, it will be woken up once any of its recipe handlers changed.
+     * <br>
+     * Machines with handlers which can't notify changes, or with matched recipes failed for other reasons (e.g. conditions), keep polling.
+     * It won't sleep if anything changed since the searching began, see {@link #beginSearching()}.
+     */
+    protected void trySleep() {
+        // keep watching handlers until the in-flight searching is done.
+        if (completableFuture != null || searchingDeferred) return;
+        if (!ConfigHolder.recipeLogicSleeping || isSleeping || !isIdle() || lastRecipe != null ||
+                lastFailedMatches != null || changedSinceSearching || !watchHandlers()) {
+            releaseSubscriptions();
+            return;
+        }
+        isSleeping = true;
+        sleepingSince = getMachine().getOffsetTimer();
+    }
+
+    /**
+     * Should be called before a searching begins, so that changes made during the (async) searching are not missed.
+     */
+    private void beginSearching() {
+        changedSinceSearching = false;
+        if (ConfigHolder.recipeLogicSleeping) {
+            watchHandlers();
+        }
+    }
+
+    /**
+     * Subscribe the change listeners of all recipe handlers, it does nothing if they are already subscribed.
+     * @return false if any handler can't notify changes.
+     */
+    private boolean watchHandlers() {
+        if (!handlerSubscriptions.isEmpty()) return true;
+        for (var handlers : machine.getRecipeCapabilitiesProxy().values()) {
+            for (IRecipeHandler<?> handler : handlers) {
+                if (handler instanceof RecipeHandlerSlotsProxy slotsProxy) {
+                    handler = slotsProxy.proxy();
+                }
+                if (handler instanceof IRecipeHandlerTrait<?> trait) {
+                    handlerSubscriptions.add(trait.addChangedListener(this::wakeUp));
+                } else {
+                    releaseSubscriptions();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wake up the sleeping machine, it will search recipes in the next round.
+     * <br>
+     * Call it once anything which may affect the recipe searching changed, e.g. recipe handlers, machine data, structure.
+     * It also marks the result of the in-flight searching as stale.
+     */
+    public void wakeUp() {
+        changedSinceSearching = true;
+        isSleeping = false;
+        releaseSubscriptions();
+    }
+
+    private record CachedCondition(long sourceKey, boolean result) {}
+
+    /**
+     * Test a condition of the recipe. The result is cached until its source changed, see {@link RecipeCondition#getVolatility()}.
+     */
+    public boolean testCondition(RecipeCondition condition, MBDRecipe recipe) {
+        long sourceKey;
+        switch (condition.getVolatility()) {
+            case STATIC -> sourceKey = 0;
+            case WEATHER -> {
+                var level = machine.getLevel();
+                if (level == null) return condition.test(recipe, this);
+                sourceKey = ((long) Float.floatToIntBits(level.getRainLevel(1)) << 32) | (Float.floatToIntBits(level.getThunderLevel(1)) & 0xFFFFFFFFL);
+            }
+            default -> {
+                return condition.test(recipe, this);
+            }
+        }
+        var cached = conditionCache.get(condition);
+        if (cached != null && cached.sourceKey() == sourceKey) {
+            return cached.result();
+        }
+        var result = condition.test(recipe, this);
+        if (conditionCache.size() >= MAX_CACHED_CONDITIONS) {
+            conditionCache.clear();
+        }
+        conditionCache.put(condition, new CachedCondition(sourceKey, result));
+        return result;
+    }
+
+    private void releaseSubscriptions() {
+        handlerSubscriptions.forEach(ISubscription::unsubscribe);
+        handlerSubscriptions.clear();
+    }
+
     protected boolean checkMatchedRecipeAvailable(MBDRecipe match) {
         var modified = machine.doModifyRecipe(match);
         if (modified != null) {
@@ -213,6 +385,13 @@ public class RecipeLogic implements IEnhancedManaged {
         return machine.getRecipeType().searchRecipe(getRecipeManager(), this.machine);
     }
 
+    /**
+     * Search recipes with the content fingerprint already computed, see {@link MBDRecipeType#searchRecipe}.
+     */
+    protected List<MBDRecipe> searchRecipe(@Nullable Long fingerprint) {
+        return machine.getRecipeType().searchRecipe(getRecipeManager(), this.machine, fingerprint);
+    }
+
     public void findAndHandleRecipe() {
         lastFailedMatches = null;
         // try to execute last recipe if possible
@@ -228,6 +407,7 @@ public class RecipeLogic implements IEnhancedManaged {
             lastRecipe = null;
             lastOriginRecipe = null;
             if (completableFuture == null) {
+                beginSearching();
                 // try to search recipe in threads.
                 if (ConfigHolder.asyncRecipeSearching) {
                     completableFuture = supplyAsyncSearchingTask();
@@ -246,9 +426,11 @@ public class RecipeLogic implements IEnhancedManaged {
                         }
                     } catch (Throwable throwable) {
                         // if error occurred, schedule a new async task.
+                        beginSearching();
                         completableFuture = supplyAsyncSearchingTask();
                     }
                 } else {
+                    beginSearching();
                     handleSearchingRecipes(searchRecipe());
                 }
             }
@@ -256,8 +438,18 @@ public class RecipeLogic implements IEnhancedManaged {
         recipeDirty = false;
     }
 
+    /**
+     * Submit an async searching task, machines with identical contents share the same searching.
+     * @return null if the searching queue is full.
+     */
+    @Nullable
     private CompletableFuture<List<MBDRecipe>> supplyAsyncSearchingTask() {
-        return CompletableFuture.supplyAsync(Util.wrapThreadWithTaskName("Searching recipes", this::searchRecipe), Util.backgroundExecutor());
+        var hasher = new ContentHasher();
+        var fingerprint = hasher.putHolder(machine) ? hasher.getHash() : null;
+        // the fingerprint is shared by the coalescing key and the searching cache.
+        var future = RecipeSearchExecutor.submit(machine.getRecipeType(), fingerprint, () -> searchRecipe(fingerprint));
+        searchingDeferred = future == null;
+        return future;
     }
 
     private void handleSearchingRecipes(List<MBDRecipe> matches) {
@@ -274,12 +466,30 @@ public class RecipeLogic implements IEnhancedManaged {
 
     public boolean handleFuelRecipe() {
         if (!needFuel() || fuelTime > 0) return true;
-        for (MBDRecipe recipe : machine.getRecipeType().searchFuelRecipe(getRecipeManager(), machine)) {
-            if (recipe.checkConditions(this).isSuccess() && recipe.handleRecipeIO(IO.IN, this.machine)) {
-                fuelMaxTime = recipe.duration;
-                fuelTime = fuelMaxTime;
-            }
-            if (fuelTime > 0) return true;
+        // try the last fuel first, most machines keep burning the same fuel.
+        var recipeType = machine.getRecipeType();
+        if (lastFuelRecipe != null && (!recipeType.isProxyRecipesLoaded() || recipeType.getFuelRecipes() != lastFuelRecipes)) {
+            lastFuelRecipe = null;
+        }
+        if (lastFuelRecipe != null && lastFuelRecipe.matchRecipe(machine).isSuccess() &&
+                lastFuelRecipe.matchTickRecipe(machine).isSuccess() && burnFuel(lastFuelRecipe)) {
+            return true;
+        }
+        for (MBDRecipe recipe : recipeType.searchFuelRecipe(getRecipeManager(), machine)) {
+            if (recipe != lastFuelRecipe && burnFuel(recipe)) return true;
+        }
+        return false;
+    }
+
+    private boolean burnFuel(MBDRecipe recipe) {
+        if (recipe.checkConditions(this).isSuccess() && recipe.handleRecipeIO(IO.IN, this.machine)) {
+            fuelMaxTime = recipe.duration;
+            fuelTime = fuelMaxTime;
+        }
+        if (fuelTime > 0) {
+            lastFuelRecipe = recipe;
+            lastFuelRecipes = machine.getRecipeType().getFuelRecipes();
+            return true;
         }
         return false;
     }
@@ -323,6 +533,7 @@ public class RecipeLogic implements IEnhancedManaged {
             }
             machine.notifyRecipeStatusChanged(this.status, status);
             this.status = status;
+            wakeUp();
             if (this.status != Status.WAITING) {
                 waitingReason = null;
             }
@@ -341,6 +552,7 @@ public class RecipeLogic implements IEnhancedManaged {
      */
     public void markLastRecipeDirty() {
         this.recipeDirty = true;
+        wakeUp();
     }
 
     public boolean isWorking() {
@@ -439,6 +651,7 @@ public class RecipeLogic implements IEnhancedManaged {
         if (lastRecipe != null && isWorking()) {
             lastRecipe.postWorking(machine);
         }
+        wakeUp();
     }
 
 }
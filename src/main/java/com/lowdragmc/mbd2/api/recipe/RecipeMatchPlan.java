@@ -0,0 +1,71 @@
+package com.lowdragmc.mbd2.api.recipe;
+
+import com.lowdragmc.mbd2.api.capability.recipe.RecipeCapability;
+import com.lowdragmc.mbd2.api.recipe.content.Content;
+
+import java.util.*;
+
+/**
+ * The precompiled contents of a recipe for matching and handling, see {@link MBDRecipe#getMatchPlan()}.
+ * <br>
+ * Contents of each capability are split by perTick and grouped by slot name once, instead of on every matching.
+ * Same as {@link MBDRecipe#hasTick()}, recipes are considered immutable once loaded, so it is never updated.
+ */
+public final class RecipeMatchPlan {
+    /**
+     * Contents of a capability.
+     * @param contents all contents.
+     * @param content content objects without slot name.
+     * @param contentSlot content objects grouped by slot name.
+     * @param hasChance whether any content may be skipped by its chance.
+     */
+    public record Group(RecipeCapability<?> capability, Content[] contents, List<Object> content, Map<String, List<Object>> contentSlot, boolean hasChance) {}
+
+    private final Map<RecipeCapability<?>, List<Content>> inputs;
+    private final Map<RecipeCapability<?>, List<Content>> outputs;
+    private final Group[] inputGroups, tickInputGroups, outputGroups, tickOutputGroups;
+
+    public RecipeMatchPlan(MBDRecipe recipe) {
+        this.inputs = recipe.inputs;
+        this.outputs = recipe.outputs;
+        this.inputGroups = compile(inputs, false);
+        this.tickInputGroups = compile(inputs, true);
+        this.outputGroups = compile(outputs, false);
+        this.tickOutputGroups = compile(outputs, true);
+    }
+
+    /**
+     * Get groups of the given contents, the contents should be either {@link MBDRecipe#inputs} or {@link MBDRecipe#outputs}.
+     * Otherwise, they will be compiled on the fly.
+     */
+    public Group[] getGroups(Map<RecipeCapability<?>, List<Content>> contents, boolean perTick) {
+        if (contents == inputs) return perTick ? tickInputGroups : inputGroups;
+        if (contents == outputs) return perTick ? tickOutputGroups : outputGroups;
+        return compile(contents, perTick);
+    }
+
+    public static Group[] compile(Map<RecipeCapability<?>, List<Content>> contents, boolean perTick) {
+        var groups = new ArrayList<Group>();
+        for (var entry : contents.entrySet()) {
+            var all = new ArrayList<Content>();
+            var content = new ArrayList<>();
+            var contentSlot = new LinkedHashMap<String, List<Object>>();
+            var hasChance = false;
+            for (Content cont : entry.getValue()) {
+                if (cont.perTick != perTick) continue;
+                all.add(cont);
+                hasChance |= cont.chance < 1;
+                if (cont.slotName.isEmpty()) {
+                    content.add(cont.content);
+                } else {
+                    contentSlot.computeIfAbsent(cont.slotName, s -> new ArrayList<>()).add(cont.content);
+                }
+            }
+            if (all.isEmpty()) continue;
+            contentSlot.replaceAll((slotName, list) -> List.copyOf(list));
+            groups.add(new Group(entry.getKey(), all.toArray(Content[]::new), List.copyOf(content),
+                    Collections.unmodifiableMap(contentSlot), hasChance));
+        }
+        return groups.toArray(Group[]::new);
+    }
+}
@@ -0,0 +1,82 @@
+package com.lowdragmc.mbd2.api.recipe;
+
+import com.lowdragmc.mbd2.config.ConfigHolder;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A LRU cache of {@link MBDRecipeType#searchRecipe} results, keyed by the content fingerprint of holders.
+ * <br>
+ * Searched recipes are still matched by the holder before being used, so the cache only has to be cleared once recipes changed.
+ */
+public final class RecipeSearchCache {
+    private final Map<Long, List<MBDRecipe>> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<MBDRecipe>> eldest) {
+            return size() > ConfigHolder.recipeSearchCacheSize;
+        }
+    };
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile int generation;
+
+    /**
+     * Get cached results of the fingerprint.
+     * @return null if it's not cached.
+     */
+    @Nullable
+    public List<MBDRecipe> get(long fingerprint) {
+        List<MBDRecipe> result;
+        synchronized (cache) {
+            result = cache.get(fingerprint);
+        }
+        (result == null ? misses : hits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * The current generation, pass it to {@link #put(long, List, int)} to avoid caching results searched before {@link #clear()}.
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public void put(long fingerprint, List<MBDRecipe> result, int generation) {
+        if (ConfigHolder.recipeSearchCacheSize <= 0) return;
+        synchronized (cache) {
+            if (this.generation == generation) {
+                cache.put(fingerprint, List.copyOf(result));
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            generation++;
+            cache.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+    }
+}
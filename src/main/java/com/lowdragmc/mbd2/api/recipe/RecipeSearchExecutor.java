@@ -0,0 +1,170 @@
+package com.lowdragmc.mbd2.api.recipe;
+
+import com.lowdragmc.mbd2.MBD2;
+import com.lowdragmc.mbd2.config.ConfigHolder;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The dedicated executor of async recipe searching, see {@link RecipeLogic#findAndHandleRecipe()}.
+ * <br>
+ * It has a global queue limit, submissions beyond it are rejected and should be retried later.
+ * Searches of the same recipe type with the same input fingerprint are coalesced into one.
+ */
+public final class RecipeSearchExecutor {
+    private record SearchKey(MBDRecipeType recipeType, long fingerprint) {}
+
+    private static final class Search {
+        private final CompletableFuture<List<MBDRecipe>> future = new CompletableFuture<>();
+        private final AtomicInteger waiters = new AtomicInteger();
+        private final long submitTime = System.nanoTime();
+    }
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+    private static final Map<SearchKey, Search> SEARCHES = new ConcurrentHashMap<>();
+    private static final AtomicInteger QUEUED = new AtomicInteger();
+    private static final AtomicLong SUBMITTED = new AtomicLong();
+    private static final AtomicLong COALESCED = new AtomicLong();
+    private static final AtomicLong REJECTED = new AtomicLong();
+    private static final AtomicLong COMPLETED = new AtomicLong();
+    private static final AtomicLong TOTAL_LATENCY = new AtomicLong();
+    private static final AtomicLong MAX_LATENCY = new AtomicLong();
+    @Nullable
+    private static ThreadPoolExecutor executor;
+
+    private RecipeSearchExecutor() {
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        var threads = ConfigHolder.recipeSearchThreads;
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                var thread = new Thread(runnable, "MBD2 Recipe Searching #" + THREAD_ID.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler((t, e) -> MBD2.LOGGER.error("error while searching recipes", e));
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+        } else if (executor.getMaximumPoolSize() != threads) {
+            // config reloaded
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Submit a searching task.
+     * @param recipeType recipe type to search.
+     * @param fingerprint the input fingerprint of the holder, null if it can't be fingerprinted and should not be coalesced.
+     * @param search the searching task.
+     * @return a future of searched recipes, cancelling it doesn't affect the other coalesced searches.
+     * Or null if the queue is full, try it later.
+     */
+    @Nullable
+    public static CompletableFuture<List<MBDRecipe>> submit(MBDRecipeType recipeType, @Nullable Long fingerprint, Supplier<List<MBDRecipe>> search) {
+        var key = fingerprint == null ? null : new SearchKey(recipeType, fingerprint);
+        if (key != null) {
+            var existing = SEARCHES.get(key);
+            if (existing != null && existing.waiters.getAndIncrement() >= 0) {
+                COALESCED.incrementAndGet();
+                return await(existing);
+            }
+        }
+        if (QUEUED.get() >= ConfigHolder.recipeSearchQueueLimit) {
+            REJECTED.incrementAndGet();
+            return null;
+        }
+        var created = new Search();
+        created.waiters.incrementAndGet();
+        if (key != null) {
+            SEARCHES.put(key, created);
+        }
+        QUEUED.incrementAndGet();
+        SUBMITTED.incrementAndGet();
+        try {
+            getExecutor().execute(() -> run(key, created, search));
+        } catch (RejectedExecutionException e) {
+            QUEUED.decrementAndGet();
+            REJECTED.incrementAndGet();
+            finish(key, created);
+            return null;
+        }
+        return await(created);
+    }
+
+    private static CompletableFuture<List<MBDRecipe>> await(Search search) {
+        var future = search.future.copy();
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                search.waiters.decrementAndGet();
+            }
+        });
+        return future;
+    }
+
+    private static void run(@Nullable SearchKey key, Search search, Supplier<List<MBDRecipe>> task) {
+        QUEUED.decrementAndGet();
+        try {
+            // all waiters have cancelled it.
+            if (search.waiters.get() <= 0) {
+                search.future.cancel(false);
+                return;
+            }
+            search.future.complete(task.get());
+        } catch (Throwable throwable) {
+            search.future.completeExceptionally(throwable);
+        } finally {
+            finish(key, search);
+            var latency = System.nanoTime() - search.submitTime;
+            COMPLETED.incrementAndGet();
+            TOTAL_LATENCY.addAndGet(latency);
+            MAX_LATENCY.accumulateAndGet(latency, Math::max);
+        }
+    }
+
+    private static void finish(@Nullable SearchKey key, Search search) {
+        if (key != null) {
+            SEARCHES.remove(key, search);
+        }
+        // no one can join it anymore.
+        search.waiters.set(Integer.MIN_VALUE);
+    }
+
+    /**
+     * Amount of searches waiting in the queue.
+     */
+    public static int getQueueDepth() {
+        return QUEUED.get();
+    }
+
+    /**
+     * Statistics of searches since the last reset.
+     */
+    public static String getStatistics() {
+        var completed = COMPLETED.get();
+        return "queue depth: %d, submitted: %d, coalesced: %d, rejected: %d, completed: %d, avg latency: %.2fms, max latency: %.2fms".formatted(
+                getQueueDepth(), SUBMITTED.get(), COALESCED.get(), REJECTED.get(), completed,
+                completed == 0 ? 0 : TOTAL_LATENCY.get() / 1e6 / completed, MAX_LATENCY.get() / 1e6);
+    }
+
+    public static void resetStatistics() {
+        SUBMITTED.set(0);
+        COALESCED.set(0);
+        REJECTED.set(0);
+        COMPLETED.set(0);
+        TOTAL_LATENCY.set(0);
+        MAX_LATENCY.set(0);
+    }
+}
@@ -0,0 +1,100 @@
+package com.lowdragmc.mbd2.api.recipe.ingredient;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.ints.IntSets;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.crafting.Ingredient;
+import net.minecraftforge.common.crafting.StrictNBTIngredient;
+
+import javax.annotation.Nullable;
+
+/**
+ * The compiled item matcher of an ingredient, items are tested by their registry ids in O(1) instead of going through {@link Ingredient#getItems()}.
+ * <br>
+ * Only ingredients matching items by id (vanilla items / tags) and {@link StrictNBTIngredient} can be compiled, nbt is only checked for the latter.
+ * Matchers are compiled against the current tags, they are expired once tags are reloaded, see {@link #invalidateAll()}.
+ * <br>
+ * Matchers are immutable once compiled, they can be shared among threads.
+ */
+public final class ItemIdMatcher {
+    /**
+     * The result of ingredients which can't be compiled, it never expires.
+     */
+    public static final ItemIdMatcher NOT_COMPILABLE = new ItemIdMatcher(-1, IntSets.EMPTY_SET, false, false);
+    private static volatile int generation;
+
+    private final int matcherGeneration;
+    private final IntSet ids;
+    private final boolean checkNBT;
+    // empty vanilla ingredients only match empty stacks.
+    private final boolean matchEmpty;
+
+    private ItemIdMatcher(int generation, IntSet ids, boolean checkNBT, boolean matchEmpty) {
+        this.matcherGeneration = generation;
+        this.ids = ids;
+        this.checkNBT = checkNBT;
+        this.matchEmpty = matchEmpty;
+    }
+
+    /**
+     * Compile the matcher of an ingredient.
+     * @return {@link #NOT_COMPILABLE} if the ingredient can't be matched by item ids.
+     */
+    public static ItemIdMatcher compile(Ingredient ingredient) {
+        var strictNBT = ingredient instanceof StrictNBTIngredient;
+        if (!ingredient.isVanilla() && !strictNBT) return NOT_COMPILABLE;
+        var currentGeneration = generation;
+        var items = ingredient.getItems();
+        var ids = new IntOpenHashSet(items.length);
+        for (var stack : items) {
+            ids.add(getId(stack));
+        }
+        return new ItemIdMatcher(currentGeneration, ids, strictNBT, !strictNBT && ingredient.isEmpty());
+    }
+
+    private static int getId(ItemStack stack) {
+        return getId(stack.getItem());
+    }
+
+    /**
+     * The id used by matchers, it's the raw registry id.
+     */
+    public static int getId(Item item) {
+        return BuiltInRegistries.ITEM.getId(item);
+    }
+
+    /**
+     * Expire all matchers, it should be called once tags are reloaded.
+     */
+    public static void invalidateAll() {
+        generation++;
+    }
+
+    /**
+     * Whether the matcher is compiled against the current tags.
+     */
+    public boolean isValid() {
+        return this == NOT_COMPILABLE || matcherGeneration == generation;
+    }
+
+    /**
+     * Ids of matched items, do not modify it.
+     */
+    public IntSet getIds() {
+        return ids;
+    }
+
+    /**
+     * Test the item stack, it should be a compiled matcher.
+     * @param ingredient the compiled ingredient, it's used to check nbt.
+     */
+    public boolean test(Ingredient ingredient, @Nullable ItemStack stack) {
+        if (stack == null) return false;
+        if (matchEmpty) return stack.isEmpty();
+        if (!ids.contains(getId(stack))) return false;
+        return !checkNBT || ingredient.test(stack);
+    }
+}
@@ -29,6 +29,9 @@ public class SizedIngredient extends Ingredient {
     @Getter
     protected Ingredient inner;
     protected ItemStack[] itemStacks = null;
+    // compiled lazily, it's null if not compiled yet. it's published once compiled, so that async searching threads see a complete matcher.
+    @Nullable
+    protected volatile ItemIdMatcher matcher = null;
 
     protected SizedIngredient(Ingredient inner, int amount) {
         super(Stream.empty());
@@ -66,6 +69,8 @@ public class SizedIngredient extends Ingredient {
             if (sizedIngredient.itemStacks != null) {
                 copied.itemStacks = Arrays.stream(sizedIngredient.itemStacks).map(ItemStack::copy).toArray(ItemStack[]::new);
             }
+            // matchers are immutable, they can be shared.
+            copied.matcher = sizedIngredient.matcher;
             return copied;
         }
         return SizedIngredient.create(ingredient);
@@ -74,6 +79,21 @@ public class SizedIngredient extends Ingredient {
     public void updateInnerIngredient(@Nonnull Ingredient inner) {
         this.inner = inner;
         this.itemStacks = null;
+        this.matcher = null;
+    }
+
+    /**
+     * Get the compiled matcher of the inner ingredient, it will be recompiled once tags are reloaded.
+     * @return null if the inner ingredient can't be compiled.
+     */
+    @Nullable
+    public ItemIdMatcher getMatcher() {
+        var matcher = this.matcher;
+        if (matcher == null || !matcher.isValid()) {
+            matcher = ItemIdMatcher.compile(inner);
+            this.matcher = matcher;
+        }
+        return matcher == ItemIdMatcher.NOT_COMPILABLE ? null : matcher;
     }
 
     @Override
@@ -97,7 +117,8 @@ public class SizedIngredient extends Ingredient {
 
     @Override
     public boolean test(@Nullable ItemStack stack) {
-        return inner.test(stack);
+        var matcher = getMatcher();
+        return matcher == null ? inner.test(stack) : matcher.test(inner, stack);
     }
 
     @Override
@@ -4,14 +4,20 @@ import com.lowdragmc.mbd2.MBD2;
 import com.lowdragmc.mbd2.api.machine.IMultiController;
 import com.lowdragmc.mbd2.api.pattern.MultiblockState;
 import com.lowdragmc.mbd2.api.pattern.MultiblockWorldSavedData;
+import com.lowdragmc.mbd2.api.recipe.ingredient.ItemIdMatcher;
 import com.lowdragmc.mbd2.common.item.MBDGadgetsItem;
 import com.lowdragmc.mbd2.common.machine.MBDMultiblockMachine;
 import com.lowdragmc.mbd2.common.machine.definition.MultiblockMachineDefinition;
+import com.lowdragmc.mbd2.core.BlockEntityDirtyQueue;
+import com.lowdragmc.mbd2.core.ThreadChunkCache;
 import net.minecraft.core.Direction;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.level.LevelAccessor;
 import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
+import net.minecraftforge.event.level.ChunkEvent;
 import net.minecraftforge.event.level.LevelEvent;
 import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.Event;
@@ -96,11 +102,45 @@ public class ForgeCommonEventListener {
 
     }
 
+    @SubscribeEvent
+    public static void onLevelTick(TickEvent.LevelTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && event.level instanceof ServerLevel serverLevel) {
+            MultiblockWorldSavedData.getOrCreate(serverLevel).flushBlockChanges();
+            if (serverLevel instanceof BlockEntityDirtyQueue.Holder holder) {
+                holder.mbd2$getBlockEntityDirtyQueue().flush();
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onLevelSave(LevelEvent.Save event) {
+        // changes made after the level tick should be saved as well.
+        if (event.getLevel() instanceof BlockEntityDirtyQueue.Holder holder) {
+            holder.mbd2$getBlockEntityDirtyQueue().flush();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        ItemIdMatcher.invalidateAll();
+        MultiblockState.onTagsUpdated();
+    }
+
+    @SubscribeEvent
+    public static void onChunkUnload(ChunkEvent.Unload event) {
+        if (event.getLevel() instanceof ServerLevel serverLevel && serverLevel.getChunkSource() instanceof ThreadChunkCache.Holder holder) {
+            holder.mbd2$getThreadChunkCache().invalidate();
+        }
+    }
+
     @SubscribeEvent
     public static void onWorldUnLoad(LevelEvent.Unload event) {
         LevelAccessor world = event.getLevel();
         if (!world.isClientSide() && world instanceof ServerLevel serverLevel) {
             MultiblockWorldSavedData.getOrCreate(serverLevel).releaseExecutorService();
+            if (serverLevel instanceof BlockEntityDirtyQueue.Holder holder) {
+                holder.mbd2$getBlockEntityDirtyQueue().clear();
+            }
         }
     }
 
@@ -1,5 +1,8 @@
 package com.lowdragmc.mbd2.common;
 
+import com.lowdragmc.mbd2.api.pattern.MultiblockWorldSavedData;
+import com.lowdragmc.mbd2.api.recipe.RecipeLogic;
+import com.lowdragmc.mbd2.api.recipe.RecipeSearchExecutor;
 import com.lowdragmc.mbd2.api.registry.MBDRegistries;
 import com.lowdragmc.mbd2.common.machine.definition.MultiblockMachineDefinition;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
@@ -32,6 +35,65 @@ public class ServerCommands {
                                     return 1;
                                 })
                         )
+                        .then(Commands.literal("stats")
+                                .then(Commands.literal("recipe_logic")
+                                        .executes(context -> {
+                                            context.getSource().sendSystemMessage(Component.literal("sleeping machines: %d, awake machines: %d"
+                                                    .formatted(RecipeLogic.getSleepingMachines(), RecipeLogic.getAwakeMachines())));
+                                            return 1;
+                                        })
+                                )
+                                .then(Commands.literal("recipe_search")
+                                        .executes(context -> {
+                                            context.getSource().sendSystemMessage(Component.literal(RecipeSearchExecutor.getStatistics()));
+                                            return 1;
+                                        })
+                                        .then(Commands.literal("reset")
+                                                .executes(context -> {
+                                                    RecipeSearchExecutor.resetStatistics();
+                                                    context.getSource().sendSystemMessage(Component.literal("recipe search statistics reset"));
+                                                    return 1;
+                                                })
+                                        )
+                                )
+                                .then(Commands.literal("recipe_cache")
+                                        .executes(context -> {
+                                            for (var recipeType : MBDRegistries.RECIPE_TYPES) {
+                                                var cache = recipeType.getSearchCache();
+                                                context.getSource().sendSystemMessage(Component.literal("%s - size: %d, hits: %d, misses: %d"
+                                                        .formatted(recipeType, cache.size(), cache.getHits(), cache.getMisses())));
+                                            }
+                                            return 1;
+                                        })
+                                        .then(Commands.literal("reset")
+                                                .executes(context -> {
+                                                    for (var recipeType : MBDRegistries.RECIPE_TYPES) {
+                                                        recipeType.getSearchCache().resetStatistics();
+                                                    }
+                                                    context.getSource().sendSystemMessage(Component.literal("recipe cache statistics reset"));
+                                                    return 1;
+                                                })
+                                        )
+                                )
+                                .then(Commands.literal("pattern_check")
+                                        .executes(context -> {
+                                            for (var level : context.getSource().getServer().getAllLevels()) {
+                                                context.getSource().sendSystemMessage(Component.literal("%s - %s"
+                                                        .formatted(level.dimension().location(), MultiblockWorldSavedData.getOrCreate(level).getStatistics())));
+                                            }
+                                            return 1;
+                                        })
+                                        .then(Commands.literal("reset")
+                                                .executes(context -> {
+                                                    for (var level : context.getSource().getServer().getAllLevels()) {
+                                                        MultiblockWorldSavedData.getOrCreate(level).resetStatistics();
+                                                    }
+                                                    context.getSource().sendSystemMessage(Component.literal("pattern check statistics reset"));
+                                                    return 1;
+                                                })
+                                        )
+                                )
+                        )
         );
     }
 }
@@ -168,6 +168,17 @@ public class EntityRecipeCapability extends RecipeCapability<EntityIngredient> {
         } catch (Exception ignored) {}
     }
 
+    @Override
+    public boolean collectIndexKeys(EntityIngredient content, Consumer<Object> collector) {
+        if (content.isEmpty()) return false;
+        var types = content.getTypes();
+        if (types.length == 0) return false;
+        for (var type : types) {
+            collector.accept(type);
+        }
+        return true;
+    }
+
     @Override
     public Component getLeftErrorInfo(List<EntityIngredient> left) {
         var result = Component.empty();
@@ -203,6 +203,22 @@ public class FluidRecipeCapability extends RecipeCapability<FluidIngredient> {
         } catch (Exception ignored) {}
     }
 
+    @Override
+    public boolean collectIndexKeys(FluidIngredient content, Consumer<Object> collector) {
+        if (content.isEmpty()) return false;
+        var stacks = content.getStacks();
+        if (stacks.length == 0) return false;
+        for (var stack : stacks) {
+            collector.accept(stack.getFluid());
+        }
+        return true;
+    }
+
+    @Override
+    public long getAmount(FluidIngredient content) {
+        return content.getAmount();
+    }
+
     @Override
     public Component getLeftErrorInfo(List<FluidIngredient> left) {
         var result = Component.empty();
@@ -71,6 +71,11 @@ public class ForgeEnergyRecipeCapability extends RecipeCapability<Integer> {
                 number -> onUpdate.accept(number.intValue()), 1, true).setRange(1, Integer.MAX_VALUE));
     }
 
+    @Override
+    public long getAmount(Integer content) {
+        return content;
+    }
+
     @Override
     public Component getLeftErrorInfo(List<Integer> left) {
         return Component.literal(left.stream().mapToInt(Integer::intValue).sum() + " fe");
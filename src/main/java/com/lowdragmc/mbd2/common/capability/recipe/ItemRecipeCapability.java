@@ -1,5 +1,7 @@
 package com.lowdragmc.mbd2.common.capability.recipe;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.lowdragmc.lowdraglib.gui.editor.accessors.CompoundTagAccessor;
 import com.lowdragmc.lowdraglib.gui.editor.configurator.*;
 import com.lowdragmc.lowdraglib.gui.texture.GuiTextureGroup;
@@ -13,6 +15,7 @@ import com.lowdragmc.lowdraglib.utils.TagOrCycleItemStackTransfer;
 import com.lowdragmc.mbd2.api.capability.recipe.RecipeCapability;
 import com.lowdragmc.mbd2.api.recipe.content.Content;
 import com.lowdragmc.mbd2.api.recipe.content.SerializerIngredient;
+import com.lowdragmc.mbd2.api.recipe.ingredient.ItemIdMatcher;
 import com.lowdragmc.mbd2.api.recipe.ingredient.SizedIngredient;
 import com.lowdragmc.mbd2.core.mixins.IngredientAccessor;
 import com.lowdragmc.mbd2.core.mixins.ItemValueAccessor;
@@ -33,6 +36,7 @@ import net.minecraft.world.item.alchemy.Potions;
 import net.minecraft.world.item.crafting.Ingredient;
 import net.minecraftforge.common.crafting.StrictNBTIngredient;
 import net.minecraftforge.registries.ForgeRegistries;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 import java.util.List;
@@ -53,11 +57,41 @@ public class ItemRecipeCapability extends RecipeCapability<Ingredient> {
     public static final String TAG_TYPE = "recipe.capability.item.ingredient.values.tag";
 
     public final static ItemRecipeCapability CAP = new ItemRecipeCapability();
+    // compiled matchers of plain ingredients, sized ingredients hold their own.
+    private final static Cache<Ingredient, ItemIdMatcher> MATCHERS = CacheBuilder.newBuilder().weakKeys().build();
 
     protected ItemRecipeCapability() {
         super("item", SerializerIngredient.INSTANCE);
     }
 
+    /**
+     * Get the compiled {@link ItemIdMatcher} of a recipe ingredient.
+     * @return null if the ingredient can't be compiled.
+     */
+    @Nullable
+    public static ItemIdMatcher getMatcher(Ingredient ingredient) {
+        if (ingredient instanceof SizedIngredient sizedIngredient) {
+            return sizedIngredient.getMatcher();
+        }
+        var matcher = MATCHERS.getIfPresent(ingredient);
+        if (matcher == null || !matcher.isValid()) {
+            matcher = ItemIdMatcher.compile(ingredient);
+            MATCHERS.put(ingredient, matcher);
+        }
+        return matcher == ItemIdMatcher.NOT_COMPILABLE ? null : matcher;
+    }
+
+    /**
+     * Test an item stack against a recipe ingredient, by its compiled {@link ItemIdMatcher} if possible.
+     */
+    public static boolean test(Ingredient ingredient, ItemStack stack) {
+        if (ingredient instanceof SizedIngredient) {
+            return ingredient.test(stack);
+        }
+        var matcher = getMatcher(ingredient);
+        return matcher != null ? matcher.test(ingredient, stack) : ingredient.test(stack);
+    }
+
     @Override
     public Ingredient createDefaultContent() {
         return SizedIngredient.create(Ingredient.of(Items.IRON_INGOT));
@@ -285,6 +319,29 @@ public class ItemRecipeCapability extends RecipeCapability<Ingredient> {
         }));
     }
 
+    @Override
+    public boolean collectIndexKeys(Ingredient content, Consumer<Object> collector) {
+        var inner = content instanceof SizedIngredient sizedIngredient ? sizedIngredient.getInner() : content;
+        // only index ingredients whose items are exhaustive, tags are expanded to items here.
+        if (!inner.isVanilla() && !(inner instanceof StrictNBTIngredient)) return false;
+        var stacks = inner.getItems();
+        if (stacks.length == 0) return false;
+        for (var stack : stacks) {
+            collector.accept(stack.getItem());
+        }
+        return true;
+    }
+
+    @Override
+    public long getAmount(Ingredient content) {
+        // same as what item handlers consume, see ItemSlotCapabilityTrait#getIngredientAmount
+        if (content instanceof SizedIngredient sizedIngredient) {
+            return sizedIngredient.getAmount();
+        }
+        var items = content.getItems();
+        return items.length > 0 ? items[0].getCount() : 1;
+    }
+
     @Override
     public Component getLeftErrorInfo(List<Ingredient> left) {
         var result = Component.empty();
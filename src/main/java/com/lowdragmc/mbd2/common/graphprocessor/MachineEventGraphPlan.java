@@ -0,0 +1,92 @@
+package com.lowdragmc.mbd2.common.graphprocessor;
+
+import com.lowdragmc.lowdraglib.gui.graphprocessor.data.BaseGraph;
+import com.lowdragmc.mbd2.MBD2;
+import com.lowdragmc.mbd2.common.machine.definition.config.event.MachineEvent;
+import lombok.Getter;
+import net.minecraft.nbt.CompoundTag;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * The compiled form of an event graph, it's shared by all machines of a definition.
+ * <br>
+ * The graph is snapshotted once, and restored into a {@link MachineEventGraphProcessor} with its compute order resolved.
+ * Machines don't own processors, a processor is only borrowed for a single run, so the values left in nodes and parameters are the only per-run states.
+ * Processors are pooled by the plan, another one is only restored if all of them are running, e.g. the graph posts the same event again,
+ * or both sides post it at the same time.
+ * <br>
+ * A plan is never updated, a new one will be compiled once the event graphs changed.
+ */
+public final class MachineEventGraphPlan {
+    /**
+     * Max idle processors kept by a plan, it's the depth of reentrant posting (per side) we expected.
+     */
+    private static final int MAX_IDLE_PROCESSORS = 4;
+
+    @Getter
+    private final Class<? extends MachineEvent> eventType;
+    private final CompoundTag graphTag;
+    // guarded by itself
+    private final Deque<MachineEventGraphProcessor> idleProcessors = new ArrayDeque<>();
+    // the graph can't be restored, don't try it again on each posting.
+    private volatile boolean invalid;
+
+    public MachineEventGraphPlan(Class<? extends MachineEvent> eventType, BaseGraph graph) {
+        this.eventType = eventType;
+        this.graphTag = graph.serializeNBT();
+        var processor = createProcessor();
+        if (processor != null) {
+            idleProcessors.add(processor);
+        }
+    }
+
+    /**
+     * Run the graph for the event with a processor borrowed from the pool.
+     */
+    public void postEvent(MachineEvent event) {
+        var processor = acquireProcessor();
+        if (processor == null) return;
+        try {
+            processor.postEvent(event);
+        } finally {
+            releaseProcessor(processor);
+        }
+    }
+
+    @Nullable
+    private MachineEventGraphProcessor acquireProcessor() {
+        synchronized (idleProcessors) {
+            var processor = idleProcessors.pollLast();
+            if (processor != null) return processor;
+        }
+        return invalid ? null : createProcessor();
+    }
+
+    private void releaseProcessor(MachineEventGraphProcessor processor) {
+        synchronized (idleProcessors) {
+            if (idleProcessors.size() < MAX_IDLE_PROCESSORS) {
+                idleProcessors.addLast(processor);
+            }
+        }
+    }
+
+    /**
+     * Restore a new processor from the snapshot.
+     * @return null if the graph can't be restored.
+     */
+    @Nullable
+    private MachineEventGraphProcessor createProcessor() {
+        var graph = new BaseGraph(MachineEvent.getExposedParameters(eventType));
+        try {
+            graph.deserializeNBT(graphTag.copy());
+        } catch (Exception e) {
+            invalid = true;
+            MBD2.LOGGER.error("Failed to create event graph processor for %s".formatted(eventType.getName()), e);
+            return null;
+        }
+        return new MachineEventGraphProcessor(this, graph);
+    }
+}
@@ -1,16 +1,29 @@
 package com.lowdragmc.mbd2.common.graphprocessor;
 
 import com.lowdragmc.lowdraglib.gui.graphprocessor.data.BaseGraph;
+import com.lowdragmc.lowdraglib.gui.graphprocessor.data.parameter.ExposedParameter;
 import com.lowdragmc.lowdraglib.gui.graphprocessor.processor.TriggerProcessor;
 import com.lowdragmc.mbd2.MBD2;
 import com.lowdragmc.mbd2.common.machine.definition.config.event.MachineEvent;
+import lombok.Getter;
 
+import java.util.Map;
+
+/**
+ * The processor of an event graph, it's pooled by its {@link MachineEventGraphPlan} and only used by one run at a time.
+ */
 public class MachineEventGraphProcessor extends TriggerProcessor {
+    @Getter
+    private final MachineEventGraphPlan plan;
     private final Class<? extends MachineEvent> eventType;
+    // resolved once, the parameters are bound and gathered by the events directly.
+    private final Map<String, ExposedParameter> parameters;
 
-    public MachineEventGraphProcessor(Class<? extends MachineEvent> eventType, BaseGraph graph) {
+    MachineEventGraphProcessor(MachineEventGraphPlan plan, BaseGraph graph) {
         super(graph);
-        this.eventType = eventType;
+        this.plan = plan;
+        this.eventType = plan.getEventType();
+        this.parameters = graph.exposedParameters;
         this.graph.updateComputeOrder(BaseGraph.ComputeOrderType.DepthFirst);
         this.updateComputeOrder();
     }
@@ -21,9 +34,9 @@ public class MachineEventGraphProcessor extends TriggerProcessor {
             return;
         }
         // bind parameters -> run -> gather parameters
-        event.bindParameters(graph.exposedParameters);
+        event.bindParameters(parameters);
         run();
-        event.gatherParameters(graph.exposedParameters);
+        event.gatherParameters(parameters);
     }
 
 }
@@ -24,6 +24,7 @@ public class MachineEventsPanel extends WidgetGroup {
     }
 
     public void openEventGraphEditor(BaseGraph graph) {
+        recompileEventGraphs();
         clearAllWidgets();
         currentGraph = graph;
         addWidget(new MachineEventGraphView(graph, 0, 0, getSizeWidth(), getSizeHeight()));
@@ -31,10 +32,20 @@ public class MachineEventsPanel extends WidgetGroup {
     }
 
     public void closeEventGraphEditor() {
+        recompileEventGraphs();
         clearAllWidgets();
         currentGraph = null;
     }
 
+    /**
+     * Machines run compiled snapshots of the graphs, recompile them to apply the edits.
+     */
+    private void recompileEventGraphs() {
+        if (editor.getCurrentProject() instanceof MachineProject project) {
+            project.getDefinition().machineEvents().onEventGraphsChanged();
+        }
+    }
+
     /**
      * Called when the panel is selected/switched to.
      */
@@ -48,6 +59,7 @@ public class MachineEventsPanel extends WidgetGroup {
      * Called when the panel is deselected/switched from.
      */
     public void onPanelDeselected() {
+        recompileEventGraphs();
         editor.getConfigPanel().clearAllConfigurators();
     }
 }
@@ -32,8 +32,8 @@ import com.lowdragmc.mbd2.common.trait.TraitDefinition;
 import com.lowdragmc.mbd2.integration.geckolib.GeckolibRenderer;
 import com.lowdragmc.mbd2.integration.photon.MachineFX;
 import com.lowdragmc.photon.client.fx.FXHelper;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.Setter;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
 import net.minecraft.nbt.CompoundTag;
@@ -90,7 +90,6 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
     @Persisted
     @DescSynced
     @UpdateListener(methodName = "updateCustomData")
-    @Setter
     private CompoundTag customData = new CompoundTag();
     @Persisted
     @DescSynced
@@ -107,6 +106,30 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
     private Map<IRenderer, Object> animatableMachine = new HashMap<>(); // it's used for Geckolib
     @Getter
     private Map<String, Object> photonFXs = new HashMap<>(); // it's used for Photon
+    @Getter(AccessLevel.NONE)
+    private final Map<Capability<?>, LazyOptional<?>[]> capabilityCache = new IdentityHashMap<>();
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private Direction capabilityCacheFacing;
+    // reusable events which are only posted to graphs
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private MachineTickEvent tickEvent;
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private MachineClientTickEvent clientTickEvent;
+    // the state waiting to be stable, see ConfigMachineSettings#stateDebounceTicks
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private String pendingState;
+    @Getter(AccessLevel.NONE)
+    private long pendingStateTime;
+    // block update and light recheck of state changes are done at most once per tick, it's the state before the deferred update.
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private String stateBeforeUpdate;
+    @Getter(AccessLevel.NONE)
+    private long lastStateUpdateTime = Long.MIN_VALUE;
 
     public MBDMachine(IMachineBlockEntity machineHolder, MBDMachineDefinition definition, Object... args) {
         this.machineHolder = machineHolder;
@@ -128,6 +151,7 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
     @Override
     public void onUnload() {
         IMachine.super.onUnload();
+        invalidateCapabilities();
         for (ITrait additionalTrait : additionalTraits) {
             additionalTrait.onMachineLoad();
         }
@@ -179,21 +203,78 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
      * @param newState
      */
     public void setMachineState(String newState) {
+        pendingState = null;
         if (machineState.equals(newState)) return;
         if (definition.stateMachine().hasState(newState)) {
-            var event = new MachineStateChangedEvent(this, machineState, newState).postCustomEvent();
-            MinecraftForge.EVENT_BUS.post(event);
-            if (!event.isCanceled()) {
+            if (!isEventListened(MachineStateChangedEvent.class) || !MinecraftForge.EVENT_BUS.post(new MachineStateChangedEvent(this, machineState, newState).postCustomEvent())) {
                 var oldState = machineState;
                 machineState = newState;
+                var level = getLevel();
+                if (level == null || level.isClientSide) {
+                    notifyBlockUpdate();
+                    updateState(newState, oldState);
+                } else if (stateBeforeUpdate == null) {
+                    if (lastStateUpdateTime == level.getGameTime()) {
+                        // already updated in this tick, defer it to the next tick.
+                        stateBeforeUpdate = oldState;
+                    } else {
+                        lastStateUpdateTime = level.getGameTime();
+                        notifyBlockUpdate();
+                        updateState(newState, oldState);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Update the machine state once it has been requested for {@link ConfigMachineSettings#stateDebounceTicks()} ticks in a row.
+     * It's used for states which may flip frequently, e.g. the ones following the recipe status.
+     * @param newState
+     */
+    public void requestMachineState(String newState) {
+        var level = getLevel();
+        var debounce = definition.machineSettings().stateDebounceTicks();
+        if (debounce <= 0 || level == null || level.isClientSide) {
+            setMachineState(newState);
+        } else if (machineState.equals(newState)) {
+            pendingState = null;
+        } else if (!newState.equals(pendingState)) {
+            pendingState = newState;
+            pendingStateTime = level.getGameTime();
+        }
+    }
+
+    /**
+     * Apply the debounced state and the deferred state update.
+     */
+    private void updatePendingState() {
+        var gameTime = getLevel().getGameTime();
+        if (pendingState != null && gameTime - pendingStateTime >= definition.machineSettings().stateDebounceTicks()) {
+            setMachineState(pendingState);
+        }
+        if (stateBeforeUpdate != null && gameTime != lastStateUpdateTime) {
+            var oldState = stateBeforeUpdate;
+            stateBeforeUpdate = null;
+            lastStateUpdateTime = gameTime;
+            // it may have been changed back within the tick.
+            if (!oldState.equals(machineState)) {
                 notifyBlockUpdate();
-                updateState(newState, oldState);
+                updateState(machineState, oldState);
             }
         }
     }
 
+    public void setCustomData(CompoundTag customData) {
+        this.customData = customData;
+        // recipe conditions may depend on the custom data.
+        recipeLogic.wakeUp();
+    }
+
     public void updateCustomData(CompoundTag newValue, CompoundTag oldValue) {
-        MinecraftForge.EVENT_BUS.post(new MachineCustomDataUpdateEvent(this, newValue, oldValue).postCustomEvent());
+        if (isEventListened(MachineCustomDataUpdateEvent.class)) {
+            MinecraftForge.EVENT_BUS.post(new MachineCustomDataUpdateEvent(this, newValue, oldValue).postCustomEvent());
+        }
     }
 
     public void updateState(String newValue, String oldValue) {
@@ -226,6 +307,7 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
      */
     public void loadAdditionalTraits() {
         if (machineHolder.getRootStorage() instanceof MultiManagedStorage multiManagedStorage) {
+            invalidateCapabilities();
             for (ITrait trait : additionalTraits) {
                 if (trait instanceof IManaged managed) {
                     multiManagedStorage.detach(managed.getSyncStorage());
@@ -251,6 +333,7 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
      */
     public void initCapabilitiesProxy() {
         recipeCapabilitiesProxy.clear();
+        recipeLogic.wakeUp();
         for (var trait : additionalTraits) {
             if (trait instanceof IRecipeHandlerTrait<?> recipeHandlerTrait) {
                 if (!recipeCapabilitiesProxy.contains(recipeHandlerTrait.getHandlerIO(), recipeHandlerTrait.getRecipeCapability())) {
@@ -318,6 +401,18 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
         }
     }
 
+    /**
+     * Called when the machine is rotated.
+     * <br>
+     * Capabilities are invalidated, because the capability IO of sides are relative to the front facing.
+     */
+    @Override
+    public void onRotated(Direction oldFacing, Direction newFacing) {
+        if (oldFacing != newFacing) {
+            invalidateCapabilities();
+        }
+    }
+
     /**
      * Get the recipe type. which is defined in the {@link ConfigMachineSettings#getRecipeType()}.
      */
@@ -335,12 +430,14 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
     @Override
     public void notifyRecipeStatusChanged(RecipeLogic.Status oldStatus, RecipeLogic.Status newStatus) {
         switch (newStatus) {
-            case WORKING -> setMachineState("working");
-            case IDLE -> setMachineState(definition.stateMachine().getRootState().name());
-            case WAITING -> setMachineState("waiting");
-            case SUSPEND -> setMachineState("suspend");
+            case WORKING -> requestMachineState("working");
+            case IDLE -> requestMachineState(definition.stateMachine().getRootState().name());
+            case WAITING -> requestMachineState("waiting");
+            case SUSPEND -> requestMachineState("suspend");
+        }
+        if (isEventListened(MachineRecipeStatusChangedEvent.class)) {
+            MinecraftForge.EVENT_BUS.post(new MachineRecipeStatusChangedEvent(this, oldStatus, newStatus).postCustomEvent());
         }
-        MinecraftForge.EVENT_BUS.post(new MachineRecipeStatusChangedEvent(this, oldStatus, newStatus).postCustomEvent());
     }
 
     /**
@@ -367,9 +464,54 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
         return machineState;
     }
 
+    /**
+     * Get the capability of the given side.
+     * <br>
+     * Resolved capabilities are cached per (capability, side), so neighbours can keep the references.
+     * The cache is invalidated when front facing changes, traits reload or the machine unloads, see {@link #invalidateCapabilities()}.
+     */
     @Override
     @NotNull
+    @SuppressWarnings("unchecked")
     public <T> LazyOptional<T> getCapability(@NotNull Capability<T> cap, @Nullable Direction side) {
+        var facing = getFrontFacing().orElse(null);
+        synchronized (capabilityCache) {
+            if (facing != capabilityCacheFacing) {
+                // the capability IO of sides are relative to the front facing
+                invalidateCapabilities();
+                capabilityCacheFacing = facing;
+            }
+            var sides = capabilityCache.computeIfAbsent(cap, c -> new LazyOptional<?>[7]);
+            var index = side == null ? 6 : side.ordinal();
+            var result = sides[index];
+            if (result == null) {
+                result = sides[index] = createCapability(cap, side);
+            }
+            return (LazyOptional<T>) result;
+        }
+    }
+
+    /**
+     * Invalidate all cached capabilities, neighbours holding them will be notified.
+     */
+    public void invalidateCapabilities() {
+        synchronized (capabilityCache) {
+            for (var sides : capabilityCache.values()) {
+                for (var result : sides) {
+                    if (result != null) {
+                        result.invalidate();
+                    }
+                }
+            }
+            capabilityCache.clear();
+        }
+    }
+
+    /**
+     * Resolve the capability of the given side from additional traits.
+     */
+    @NotNull
+    protected <T> LazyOptional<T> createCapability(@NotNull Capability<T> cap, @Nullable Direction side) {
         List<T> results = new ArrayList<>();
         for (var trait : additionalTraits) {
             if (trait instanceof ICapabilityProviderTrait<?> capabilityProviderTrait && capabilityProviderTrait.getCapability() == cap) {
@@ -417,9 +559,10 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
      * Server tick. will be called on server side per tick.
      */
     public void serverTick() {
-        var event = new MachineTickEvent(this).postCustomEvent();
-        MinecraftForge.EVENT_BUS.post(event);
-        if (!event.isCanceled()) {
+        if (pendingState != null || stateBeforeUpdate != null) {
+            updatePendingState();
+        }
+        if (!postTickEvent()) {
             if (runRecipeLogic()) {
                 recipeLogic.serverTick();
             }
@@ -429,6 +572,32 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
         }
     }
 
+    /**
+     * Post the {@link MachineTickEvent} if it's listened.
+     * @return whether the tick is canceled.
+     */
+    private boolean postTickEvent() {
+        if (MachineEvent.hasForgeListeners(MachineTickEvent.class)) {
+            return MinecraftForge.EVENT_BUS.post(new MachineTickEvent(this).postCustomEvent());
+        }
+        if (getDefinition().machineEvents().hasGraph(MachineTickEvent.class)) {
+            // it's only posted to the graph, so that it can be reused.
+            if (tickEvent == null) {
+                tickEvent = new MachineTickEvent(this);
+            }
+            tickEvent.setCanceled(false);
+            return tickEvent.postCustomEvent().isCanceled();
+        }
+        return false;
+    }
+
+    /**
+     * Whether the event should be created and posted, i.e. it has a graph or any forge listener.
+     */
+    protected boolean isEventListened(Class<? extends MachineEvent> eventClazz) {
+        return getDefinition().machineEvents().isListened(eventClazz);
+    }
+
     /**
      * Shall we run the recipe logic during the server tick?
      * <br>
@@ -491,33 +660,41 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
 
     @Override
     public boolean beforeWorking(MBDRecipe recipe) {
-        var event = new MachineBeforeRecipeWorkingEvent(this, recipe);
-        MinecraftForge.EVENT_BUS.post(event.postCustomEvent());
-        if (event.isCanceled()) {
-            return false;
+        if (isEventListened(MachineBeforeRecipeWorkingEvent.class)) {
+            var event = new MachineBeforeRecipeWorkingEvent(this, recipe);
+            MinecraftForge.EVENT_BUS.post(event.postCustomEvent());
+            if (event.isCanceled()) {
+                return false;
+            }
         }
         return IMachine.super.beforeWorking(recipe);
     }
 
     @Override
     public boolean onWorking() {
-        var event = new MachineOnRecipeWorkingEvent(this, recipeLogic.getLastRecipe(), recipeLogic.getProgress());
-        MinecraftForge.EVENT_BUS.post(event.postCustomEvent());
-        if (event.isCanceled()) {
-            return true;
+        if (isEventListened(MachineOnRecipeWorkingEvent.class)) {
+            var event = new MachineOnRecipeWorkingEvent(this, recipeLogic.getLastRecipe(), recipeLogic.getProgress());
+            MinecraftForge.EVENT_BUS.post(event.postCustomEvent());
+            if (event.isCanceled()) {
+                return true;
+            }
         }
         return IMachine.super.onWorking();
     }
 
     @Override
     public void onWaiting() {
-        MinecraftForge.EVENT_BUS.post(new MachineOnRecipeWaitingEvent(this, recipeLogic.getLastRecipe()).postCustomEvent());
+        if (isEventListened(MachineOnRecipeWaitingEvent.class)) {
+            MinecraftForge.EVENT_BUS.post(new MachineOnRecipeWaitingEvent(this, recipeLogic.getLastRecipe()).postCustomEvent());
+        }
         IMachine.super.onWaiting();
     }
 
     @Override
     public void afterWorking() {
-        MinecraftForge.EVENT_BUS.post(new MachineAfterRecipeWorkingEvent(this, recipeLogic.getLastRecipe()).postCustomEvent());
+        if (isEventListened(MachineAfterRecipeWorkingEvent.class)) {
+            MinecraftForge.EVENT_BUS.post(new MachineAfterRecipeWorkingEvent(this, recipeLogic.getLastRecipe()).postCustomEvent());
+        }
         IMachine.super.afterWorking();
     }
 
@@ -526,7 +703,15 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
      */
     @OnlyIn(Dist.CLIENT)
     public void clientTick() {
-        MinecraftForge.EVENT_BUS.post(new MachineClientTickEvent(this).postCustomEvent());
+        if (MachineEvent.hasForgeListeners(MachineClientTickEvent.class)) {
+            MinecraftForge.EVENT_BUS.post(new MachineClientTickEvent(this).postCustomEvent());
+        } else if (getDefinition().machineEvents().hasGraph(MachineClientTickEvent.class)) {
+            // it's only posted to the graph, so that it can be reused.
+            if (clientTickEvent == null) {
+                clientTickEvent = new MachineClientTickEvent(this);
+            }
+            clientTickEvent.postCustomEvent();
+        }
         for (ITrait trait : additionalTraits) {
             trait.clientTick();
         }
@@ -542,7 +727,9 @@ public class MBDMachine implements IMachine, IEnhancedManaged, ICapabilityProvid
      * Called when neighbors changed.
      */
     public void onNeighborChanged(Block block, BlockPos fromPos, boolean isMoving) {
-        MinecraftForge.EVENT_BUS.post(new MachineNeighborChangedEvent(this, block, fromPos).postCustomEvent());
+        if (isEventListened(MachineNeighborChangedEvent.class)) {
+            MinecraftForge.EVENT_BUS.post(new MachineNeighborChangedEvent(this, block, fromPos).postCustomEvent());
+        }
     }
 
     /**
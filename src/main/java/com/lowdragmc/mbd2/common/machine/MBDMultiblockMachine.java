@@ -31,6 +31,7 @@ import it.unimi.dsi.fastutil.longs.LongSets;
 import lombok.Getter;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.server.TickTask;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.world.InteractionHand;
@@ -84,21 +85,42 @@ public class MBDMultiblockMachine extends MBDMachine implements IMultiController
     public void onLoad() {
         super.onLoad();
         if (getLevel() instanceof ServerLevel serverLevel) {
-            if (isFormed && getDefinition().multiblockSettings().catalyst().isEnable()) {
-                // check pattern in the next tick
+            var mwsd = MultiblockWorldSavedData.getOrCreate(serverLevel);
+            var savedStructure = mwsd.takeSavedStructure(getPos());
+            var requireCatalyst = getDefinition().multiblockSettings().catalyst().isEnable();
+            if (isFormed && (savedStructure != null || requireCatalyst)) {
+                // restore the saved structure or check pattern in the next tick
                 serverLevel.getServer().tell(new TickTask(0, () -> {
-                    if (checkPatternWithLock()) {
+                    if (isInValid()) return;
+                    if ((savedStructure != null && restoreStructure(savedStructure)) || (requireCatalyst && checkPatternWithLock())) {
                         onStructureFormed();
-                        var mwsd = MultiblockWorldSavedData.getOrCreate(serverLevel);
                         mwsd.addMapping(getMultiblockState());
                         mwsd.removeAsyncLogic(this);
                     }
                 }));
             }
-            MultiblockWorldSavedData.getOrCreate(serverLevel).addAsyncLogic(this);
+            mwsd.addAsyncLogic(this);
         }
     }
 
+    /**
+     * Restore the structure saved before reloading, see {@link MultiblockState#loadStructure(CompoundTag)}.
+     */
+    protected boolean restoreStructure(CompoundTag savedStructure) {
+        var lock = getPatternLock();
+        lock.lock();
+        try {
+            return getMultiblockState().loadStructure(savedStructure);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getPatternSignature() {
+        return getDefinition().getPatternSignature(getPattern());
+    }
+
     /**
      * on machine invalid in the chunk.
      * <br>
@@ -127,15 +149,17 @@ public class MBDMultiblockMachine extends MBDMachine implements IMultiController
         IMultiController.super.notifyRecipeStatusChanged(oldStatus, newStatus);
         if (isFormed) {
             switch (newStatus) {
-                case WORKING -> setMachineState("working");
-                case IDLE -> setMachineState("formed");
-                case WAITING -> setMachineState("waiting");
-                case SUSPEND -> setMachineState("suspend");
+                case WORKING -> requestMachineState("working");
+                case IDLE -> requestMachineState("formed");
+                case WAITING -> requestMachineState("waiting");
+                case SUSPEND -> requestMachineState("suspend");
             }
         } else {
             setMachineState("base");
         }
-        MinecraftForge.EVENT_BUS.post(new MachineRecipeStatusChangedEvent(this, oldStatus, newStatus).postCustomEvent());
+        if (isEventListened(MachineRecipeStatusChangedEvent.class)) {
+            MinecraftForge.EVENT_BUS.post(new MachineRecipeStatusChangedEvent(this, oldStatus, newStatus).postCustomEvent());
+        }
     }
 
     @Override
@@ -328,6 +352,8 @@ public class MBDMultiblockMachine extends MBDMachine implements IMultiController
             part.addedToController(this);
         }
         updatePartPositions();
+        // count blocks after replacing proxy part blocks, it's used for BlockCondition
+        getMultiblockState().countBlocks();
         // refresh traits
         initCapabilitiesProxy();
         // post event
@@ -362,6 +388,7 @@ public class MBDMultiblockMachine extends MBDMachine implements IMultiController
             }
         }
         this.renderingDisabledPositions.clear();
+        getMultiblockState().clearBlockCounts();
         // post event
         MinecraftForge.EVENT_BUS.post(new MachineStructureInvalidEvent(this).postCustomEvent());
     }
@@ -369,7 +396,7 @@ public class MBDMultiblockMachine extends MBDMachine implements IMultiController
     /**
      * mark multiblockState as unload error first.
      * if it's actually cuz by block breaking.
-     * {@link #onStructureInvalid()} will be called from {@link MultiblockState#onBlockStateChanged(BlockPos, BlockState)}
+     * {@link #onStructureInvalid()} will be called from {@link MultiblockState#onBlocksChanged()}
      */
     @Override
     public void onPartUnload() {
@@ -388,6 +415,7 @@ public class MBDMultiblockMachine extends MBDMachine implements IMultiController
      */
     @Override
     public void onRotated(Direction oldFacing, Direction newFacing) {
+        super.onRotated(oldFacing, newFacing);
         if (oldFacing != newFacing && getLevel() instanceof ServerLevel serverLevel) {
             // invalid structure
             this.onStructureInvalid();
@@ -162,16 +162,16 @@ public class MBDPartMachine extends MBDMachine implements IMultiPart {
         IMultiPart.super.notifyControllerRecipeStatusChanged(controller, oldStatus, newStatus);
         if (isFormed()) {
             switch (newStatus) {
-                case WORKING -> setMachineState("working");
+                case WORKING -> requestMachineState("working");
                 case IDLE -> {
                     if (getDefinition().stateMachine().hasState("formed")) {
-                        setMachineState("formed");
+                        requestMachineState("formed");
                     } else {
-                        setMachineState("base");
+                        requestMachineState("base");
                     }
                 }
-                case WAITING -> setMachineState("waiting");
-                case SUSPEND -> setMachineState("suspend");
+                case WAITING -> requestMachineState("waiting");
+                case SUSPEND -> requestMachineState("suspend");
             }
         } else {
             setMachineState("base");
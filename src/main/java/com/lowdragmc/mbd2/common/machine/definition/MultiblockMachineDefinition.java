@@ -10,6 +10,7 @@ import com.lowdragmc.mbd2.common.gui.editor.MultiblockMachineProject;
 import com.lowdragmc.mbd2.common.gui.editor.PredicateResource;
 import com.lowdragmc.mbd2.common.machine.MBDMultiblockMachine;
 import com.lowdragmc.mbd2.common.machine.definition.config.*;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.experimental.Accessors;
@@ -49,6 +50,12 @@ public class MultiblockMachineDefinition extends MBDMachineDefinition {
     private Function<MBDMultiblockMachine, BlockPattern> blockPatternFactory;
     @Setter
     private Function<MultiblockMachineDefinition, MultiblockShapeInfo[]> shapeInfoFactory;
+    // the pattern loaded from the project, and its signature. see getPatternSignature
+    @Getter(AccessLevel.NONE)
+    @Nullable
+    private BlockPattern projectPattern;
+    @Getter(AccessLevel.NONE)
+    private long projectPatternSignature;
 
     public MultiblockMachineDefinition(ResourceLocation id,
                                        @Nullable MachineState rootState,
@@ -125,6 +132,12 @@ public class MultiblockMachineDefinition extends MBDMachineDefinition {
             }
             var blockPattern = createBlockPattern(placeholders, layerAxis, aisleRepetitions, this);
             blockPatternFactory(controller -> blockPattern);
+            projectPattern = blockPattern;
+            // nbt hashes are content based, so that the signature is stable across restarts.
+            // block entity nbt isn't persisted with structures, such patterns are always checked.
+            projectPatternSignature = blockPattern.hasNBTPredicates() ? 0 : Objects.hash(projectTag.getCompound("placeholders"),
+                    projectTag.getCompound("resources").getCompound(PredicateResource.RESOURCE_NAME),
+                    layerAxis.name(), Arrays.hashCode(repetitions)) | (1L << 32);
             // setup shape info
             var shapeInfos = new ArrayList<>(projectTag.getList("shape_infos", Tag.TAG_COMPOUND).stream()
                     .map(CompoundTag.class::cast)
@@ -153,6 +166,14 @@ public class MultiblockMachineDefinition extends MBDMachineDefinition {
         return blockPatternFactory.apply(controller);
     }
 
+    /**
+     * Get a signature of the pattern which is stable across restarts, it's used to validate persisted structures.
+     * @return 0 if the pattern isn't the one loaded from the project, e.g. dynamic patterns.
+     */
+    public long getPatternSignature(@Nullable BlockPattern pattern) {
+        return pattern != null && pattern == projectPattern ? projectPatternSignature : 0;
+    }
+
     public void sortParts(List<IMultiPart> parts) {
     }
 
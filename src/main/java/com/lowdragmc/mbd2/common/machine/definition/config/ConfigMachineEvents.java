@@ -20,14 +20,16 @@ import com.lowdragmc.lowdraglib.utils.Position;
 import com.lowdragmc.mbd2.common.gui.editor.MachineEditor;
 import com.lowdragmc.mbd2.common.gui.editor.machine.MachineEventsPanel;
 import com.lowdragmc.mbd2.common.machine.definition.config.event.MachineEvent;
-import com.lowdragmc.mbd2.common.graphprocessor.MachineEventGraphProcessor;
+import com.lowdragmc.mbd2.common.graphprocessor.MachineEventGraphPlan;
 import com.lowdragmc.mbd2.integration.ldlib.MBDLDLibPlugin;
 import lombok.Getter;
 import net.minecraft.nbt.CompoundTag;
 
+import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Getter
 public class ConfigMachineEvents implements IConfigurable, IPersistedSerializable {
@@ -38,7 +40,12 @@ public class ConfigMachineEvents implements IConfigurable, IPersistedSerializabl
     public final Map<Class<? extends MachineEvent>, BaseGraph> eventGraphs = new HashMap<>();
 
     // runtime
-    private final Map<Class<? extends MachineEvent>, MachineEventGraphProcessor> processorCache = new HashMap<>();
+    private final Map<Class<? extends MachineEvent>, MachineEventGraphPlan> planCache = new ConcurrentHashMap<>();
+    /**
+     * Bits of {@link MachineEvent#getEventId(Class)} which have graphs, ids beyond 63 are looked up from {@link #eventGraphs} directly.
+     */
+    private volatile long graphMask;
+    private volatile boolean graphMaskDirty = true;
 
     public ConfigMachineEvents registerEventGroup(String group) {
         Optional.ofNullable(MBDLDLibPlugin.REGISTER_MACHINE_EVENTS.get(group))
@@ -46,15 +53,67 @@ public class ConfigMachineEvents implements IConfigurable, IPersistedSerializabl
         return this;
     }
 
+    /**
+     * Whether the event class has a graph.
+     */
+    public boolean hasGraph(Class<? extends MachineEvent> eventClazz) {
+        var id = MachineEvent.getEventId(eventClazz);
+        if (id >= Long.SIZE) {
+            return eventGraphs.containsKey(eventClazz);
+        }
+        if (graphMaskDirty) {
+            long mask = 0;
+            for (var clazz : eventGraphs.keySet()) {
+                var bit = MachineEvent.getEventId(clazz);
+                if (bit < Long.SIZE) {
+                    mask |= 1L << bit;
+                }
+            }
+            graphMask = mask;
+            graphMaskDirty = false;
+        }
+        return (graphMask & (1L << id)) != 0;
+    }
+
+    /**
+     * Should be called once {@link #eventGraphs} changed.
+     */
+    public void onEventGraphsChanged() {
+        graphMaskDirty = true;
+        planCache.clear();
+    }
+
+    /**
+     * Whether the event should be created and posted, i.e. it has a graph or any forge listener.
+     */
+    public boolean isListened(Class<? extends MachineEvent> eventClazz) {
+        return hasGraph(eventClazz) || MachineEvent.hasForgeListeners(eventClazz);
+    }
+
     public void postGraphEvent(MachineEvent event) {
         var eventClazz = event.getClass();
-        if (!eventGraphs.containsKey(eventClazz)) {
+        if (!hasGraph(eventClazz)) {
             return;
         }
-        if (!processorCache.containsKey(eventClazz)) {
-            processorCache.put(eventClazz, new MachineEventGraphProcessor(eventClazz, eventGraphs.get(eventClazz)));
+        var plan = getPlan(eventClazz);
+        if (plan != null) {
+            plan.postEvent(event);
+        }
+    }
+
+    /**
+     * Get the compiled plan of the event graph, it will be compiled once and shared by all machines.
+     * @return null if there is no graph.
+     */
+    @Nullable
+    public MachineEventGraphPlan getPlan(Class<? extends MachineEvent> eventClazz) {
+        var plan = planCache.get(eventClazz);
+        if (plan == null) {
+            var graph = eventGraphs.get(eventClazz);
+            if (graph == null) return null;
+            plan = planCache.computeIfAbsent(eventClazz, clazz -> new MachineEventGraphPlan(clazz, graph));
         }
-        processorCache.get(eventClazz).postEvent(event);
+        return plan;
     }
 
     @Override
@@ -77,7 +136,7 @@ public class ConfigMachineEvents implements IConfigurable, IPersistedSerializabl
     @Override
     public void deserializeNBT(CompoundTag tag) {
         eventGraphs.clear();
-        processorCache.clear();
+        onEventGraphsChanged();
         IPersistedSerializable.super.deserializeNBT(tag);
         var eventGraphsTag = tag.getCompound("eventGraphs");
         for (String name : eventGraphsTag.getAllKeys()) {
@@ -93,6 +152,7 @@ public class ConfigMachineEvents implements IConfigurable, IPersistedSerializabl
                 }
             }
         }
+        onEventGraphsChanged();
     }
 
     @Override
@@ -112,6 +172,7 @@ public class ConfigMachineEvents implements IConfigurable, IPersistedSerializabl
                             .findAny().orElse(null) : null;
             removeButton.setOnPressCallback(cd -> {
                 var removed = eventGraphs.remove(clazz);
+                onEventGraphsChanged();
                 updateRemoveButtonStyle.run();
                 // close event graph editor if its open
                 if (panel != null && panel.getCurrentGraph() == removed) {
@@ -135,6 +196,7 @@ public class ConfigMachineEvents implements IConfigurable, IPersistedSerializabl
                     // add a trigger node as default
                     graph.addNode(BaseNode.createFromType(StartNode.class, new Position(0, 0)));
                     eventGraphs.put(clazz, graph);
+                    onEventGraphsChanged();
                 }
                 updateRemoveButtonStyle.run();
                 // open editor
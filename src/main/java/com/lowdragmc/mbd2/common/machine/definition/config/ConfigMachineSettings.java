@@ -57,6 +57,11 @@ public class ConfigMachineSettings implements IPersistedSerializable, IConfigura
     @Configurable(name = "config.machine_settings.recipe_damping_value", tips = "config.machine_settings.recipe_damping_value.tooltip")
     @NumberRange(range = {0, Integer.MAX_VALUE})
     protected int recipeDampingValue = 2;
+    @Getter
+    @Builder.Default
+    @Configurable(name = "config.machine_settings.state_debounce_ticks", tips = "config.machine_settings.state_debounce_ticks.tooltip")
+    @NumberRange(range = {0, Integer.MAX_VALUE})
+    protected int stateDebounceTicks = 0;
     @Singular
     @NonNull
     @Getter
@@ -2,17 +2,49 @@ package com.lowdragmc.mbd2.common.machine.definition.config.event;
 
 import com.lowdragmc.lowdraglib.gui.editor.ILDLRegister;
 import com.lowdragmc.lowdraglib.gui.graphprocessor.data.parameter.ExposedParameter;
+import com.lowdragmc.mbd2.MBD2;
 import com.lowdragmc.mbd2.common.machine.MBDMachine;
+import com.lowdragmc.mbd2.common.machine.definition.config.ConfigMachineEvents;
 import com.lowdragmc.mbd2.common.graphprocessor.GraphParameterGet;
 import lombok.Getter;
 import com.lowdragmc.mbd2.common.graphprocessor.GraphParameterSet;
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.eventbus.ListenerList;
 import net.minecraftforge.eventbus.api.Cancelable;
 import net.minecraftforge.eventbus.api.Event;
+import net.minecraftforge.eventbus.api.EventListenerHelper;
 
+import javax.annotation.Nullable;
+import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Getter
 public class MachineEvent extends Event implements ILDLRegister {
+    private static final AtomicInteger NEXT_EVENT_ID = new AtomicInteger();
+    private static final ClassValue<Integer> EVENT_IDS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            return NEXT_EVENT_ID.getAndIncrement();
+        }
+    };
+    private static final ClassValue<ListenerList> LISTENER_LISTS = new ClassValue<>() {
+        @Override
+        protected ListenerList computeValue(Class<?> type) {
+            return EventListenerHelper.getListenerList(type);
+        }
+    };
+    private static final ClassValue<List<ParameterInfo>> PARAMETER_INFOS = new ClassValue<>() {
+        @Override
+        protected List<ParameterInfo> computeValue(Class<?> type) {
+            return scanParameterInfos(type);
+        }
+    };
+    /**
+     * The bus id of {@link MinecraftForge#EVENT_BUS}, or -1 if it can't be resolved, then all events are considered as listened.
+     */
+    private static final int FORGE_BUS_ID = resolveForgeBusId();
+
     @GraphParameterGet
     public final MBDMachine machine;
 
@@ -28,71 +60,92 @@ public class MachineEvent extends Event implements ILDLRegister {
         return this;
     }
 
+    /**
+     * Get a unique runtime id of the event class, it's used for event masks, see {@link ConfigMachineEvents#hasGraph(Class)}.
+     */
+    public static int getEventId(Class<? extends MachineEvent> clazz) {
+        return EVENT_IDS.get(clazz);
+    }
+
+    /**
+     * Whether any listener subscribes the event class on {@link MinecraftForge#EVENT_BUS}.
+     * <br>
+     * Listeners may be registered at any time, so it should be checked before each posting. It's cheap.
+     */
+    public static boolean hasForgeListeners(Class<? extends MachineEvent> clazz) {
+        if (FORGE_BUS_ID < 0) return true;
+        return LISTENER_LISTS.get(clazz).getListeners(FORGE_BUS_ID).length > 0;
+    }
+
+    private static int resolveForgeBusId() {
+        try {
+            var field = MinecraftForge.EVENT_BUS.getClass().getDeclaredField("busID");
+            field.setAccessible(true);
+            return field.getInt(MinecraftForge.EVENT_BUS);
+        } catch (Throwable e) {
+            MBD2.LOGGER.warn("Failed to resolve the bus id of the forge event bus, all machine events will be posted", e);
+            return -1;
+        }
+    }
+
     /**
      * Get the exposed parameters for the given event class, it will detect all public fields with annotations in the class.
      * <br>
      * {@link GraphParameterGet} marked fields will be used to pass parameters to the graph.
-     * <br<
+     * <br>
      * {@link GraphParameterSet} marked fields will be used to gather parameters from the graph.
+     * <br>
+     * The class is only scanned once, new parameter instances are created from the cached metadata for each graph.
      * @param clazz event class
      * @return parameters
      */
     public static List<ExposedParameter<?>> getExposedParameters(Class<? extends MachineEvent> clazz) {
-        var parameters = new ArrayList<ExposedParameter<?>>();
+        var infos = PARAMETER_INFOS.get(clazz);
+        var parameters = new ArrayList<ExposedParameter<?>>(infos.size());
+        for (var info : infos) {
+            parameters.add(info.create());
+        }
+        return parameters;
+    }
+
+    private static List<ParameterInfo> scanParameterInfos(Class<?> clazz) {
+        var infos = new ArrayList<ParameterInfo>();
         for (var field : clazz.getFields()) {
             if (field.isAnnotationPresent(GraphParameterGet.class)) {
                 var annotation = field.getAnnotation(GraphParameterGet.class);
-                var identity = field.getName();
-                var displayName = field.getName();
-                var type = field.getType();
-                List<String> tips = null;
-                if (!annotation.identity().isEmpty()) {
-                    identity = annotation.identity();
-                }
-                if (!annotation.displayName().isEmpty()) {
-                    displayName = annotation.displayName();
-                }
-                if (annotation.type() != ExposedParameter.class) {
-                    type = annotation.type();
-                }
-                if (annotation.tips().length > 0) {
-                    tips = Arrays.asList(annotation.tips());
-                }
-                parameters.add(new ExposedParameter<>(identity, type)
-                        .setTips(tips)
-                        .setAccessor(ExposedParameter.ParameterAccessor.Get)
-                        .setDisplayName(displayName));
+                infos.add(ParameterInfo.of(field, annotation.identity(), annotation.displayName(), annotation.type(), annotation.tips(),
+                        ExposedParameter.ParameterAccessor.Get));
             }
             if (field.isAnnotationPresent(GraphParameterSet.class)) {
                 var annotation = field.getAnnotation(GraphParameterSet.class);
-                var identity = field.getName();
-                var displayName = field.getName();
-                var type = field.getType();
-                List<String> tips = null;
-                if (!annotation.identity().isEmpty()) {
-                    identity = annotation.identity();
-                }
-                if (!annotation.displayName().isEmpty()) {
-                    displayName = annotation.displayName();
-                }
-                if (annotation.type() != ExposedParameter.class) {
-                    type = annotation.type();
-                }
-                if (annotation.tips().length > 0) {
-                    tips = Arrays.asList(annotation.tips());
-                }
-                parameters.add(new ExposedParameter<>(identity, type)
-                        .setTips(tips)
-                        .setAccessor(ExposedParameter.ParameterAccessor.Set)
-                        .setDisplayName(displayName));
+                infos.add(ParameterInfo.of(field, annotation.identity(), annotation.displayName(), annotation.type(), annotation.tips(),
+                        ExposedParameter.ParameterAccessor.Set));
             }
         }
         if (clazz.isAnnotationPresent(Cancelable.class)) {
-            parameters.add(new ExposedParameter<>("cancel", Boolean.class)
-                    .setAccessor(ExposedParameter.ParameterAccessor.Set)
-                    .setDisplayName("cancel"));
+            infos.add(new ParameterInfo("cancel", Boolean.class, "cancel", null, ExposedParameter.ParameterAccessor.Set));
+        }
+        return List.copyOf(infos);
+    }
+
+    private record ParameterInfo(String identity, Class<?> type, String displayName, @Nullable List<String> tips,
+                                 ExposedParameter.ParameterAccessor accessor) {
+
+        private static ParameterInfo of(Field field, String identity, String displayName, Class<?> type, String[] tips,
+                                        ExposedParameter.ParameterAccessor accessor) {
+            return new ParameterInfo(identity.isEmpty() ? field.getName() : identity,
+                    type == ExposedParameter.class ? field.getType() : type,
+                    displayName.isEmpty() ? field.getName() : displayName,
+                    tips.length > 0 ? Arrays.asList(tips) : null,
+                    accessor);
+        }
+
+        private ExposedParameter<?> create() {
+            return new ExposedParameter<>(identity, type)
+                    .setTips(tips)
+                    .setAccessor(accessor)
+                    .setDisplayName(displayName);
         }
-        return parameters;
     }
 
     /**
@@ -56,6 +56,11 @@ public class BiomeCondition extends RecipeCondition {
         return biome.is(this.biome);
     }
 
+    @Override
+    public Volatility getVolatility() {
+        return Volatility.STATIC;
+    }
+
     @Nonnull
     @Override
     public JsonObject serialize() {
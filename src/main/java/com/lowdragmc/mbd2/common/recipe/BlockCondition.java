@@ -69,6 +69,16 @@ public class BlockCondition extends RecipeCondition {
     public boolean test(@Nonnull MBDRecipe recipe, @Nonnull RecipeLogic recipeLogic) {
         var amount = 0;
         if (recipeLogic.machine instanceof IMultiController controller) {
+            var state = controller.getMultiblockState();
+            if (state.hasBlockCounts()) {
+                for (int i = 0; i < blocks.length; i++) {
+                    // skip duplicated blocks
+                    if (ArrayUtils.indexOf(blocks, blocks[i]) == i) {
+                        amount += state.getBlockCount(blocks[i]);
+                    }
+                }
+                return amount >= minCount && amount <= maxCount;
+            }
             var level = controller.getLevel();
             for (var pos : controller.getMultiblockState().getCache()) {
                 if (ArrayUtils.contains(blocks, level.getBlockState(pos).getBlock())) {
@@ -51,6 +51,11 @@ public class DimensionCondition extends RecipeCondition {
         return level != null && dimension.equals(level.dimension().location());
     }
 
+    @Override
+    public Volatility getVolatility() {
+        return Volatility.STATIC;
+    }
+
     @Nonnull
     @Override
     public JsonObject serialize() {
@@ -9,6 +9,7 @@ import com.lowdragmc.mbd2.api.recipe.MBDRecipe;
 import com.lowdragmc.mbd2.api.recipe.RecipeCondition;
 import com.lowdragmc.mbd2.api.recipe.RecipeLogic;
 import com.lowdragmc.mbd2.common.machine.MBDMachine;
+import com.lowdragmc.mbd2.utils.NBTUtil;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import net.minecraft.nbt.CompoundTag;
@@ -48,10 +49,7 @@ public class MachineCustomDataCondition extends RecipeCondition {
     @Override
     public boolean test(@Nonnull MBDRecipe recipe, @Nonnull RecipeLogic recipeLogic) {
         if (!data.isEmpty() && recipeLogic.getMachine() instanceof MBDMachine mbdMachine) {
-            var machineData = mbdMachine.getCustomData();
-            var copied = machineData.copy();
-            copied.merge(this.data);
-            return copied.equals(machineData);
+            return NBTUtil.isSubset(this.data, mbdMachine.getCustomData());
         }
         return data.isEmpty();
     }
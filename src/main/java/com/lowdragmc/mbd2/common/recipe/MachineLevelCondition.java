@@ -50,6 +50,11 @@ public class MachineLevelCondition extends RecipeCondition {
         return recipeLogic.machine.getMachineLevel() >= this.level;
     }
 
+    @Override
+    public Volatility getVolatility() {
+        return Volatility.STATIC;
+    }
+
     @Nonnull
     @Override
     public JsonObject serialize() {
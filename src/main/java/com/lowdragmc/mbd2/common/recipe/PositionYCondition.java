@@ -53,6 +53,11 @@ public class PositionYCondition extends RecipeCondition {
         return y >= this.min && y <= this.max;
     }
 
+    @Override
+    public Volatility getVolatility() {
+        return Volatility.STATIC;
+    }
+
     @Nonnull
     @Override
     public JsonObject serialize() {
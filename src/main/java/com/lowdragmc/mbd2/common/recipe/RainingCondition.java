@@ -54,6 +54,11 @@ public class RainingCondition extends RecipeCondition {
         return level != null && level.getRainLevel(1) >= this.minLevel && level.getRainLevel(1) <= this.maxLevel;
     }
 
+    @Override
+    public Volatility getVolatility() {
+        return Volatility.WEATHER;
+    }
+
     @Nonnull
     @Override
     public JsonObject serialize() {
@@ -54,6 +54,11 @@ public class ThunderCondition extends RecipeCondition {
         return level != null && level.getThunderLevel(1) >= this.minLevel && level.getThunderLevel(1) <= this.maxLevel;
     }
 
+    @Override
+    public Volatility getVolatility() {
+        return Volatility.WEATHER;
+    }
+
     @Nonnull
     @Override
     public JsonObject serialize() {
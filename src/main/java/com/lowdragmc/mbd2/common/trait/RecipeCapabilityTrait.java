@@ -8,8 +8,8 @@ import com.lowdragmc.mbd2.api.capability.recipe.RecipeCapability;
 import com.lowdragmc.mbd2.common.machine.MBDMachine;
 import lombok.Getter;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.Set;
 
 /**
@@ -22,7 +22,7 @@ public abstract class RecipeCapabilityTrait<CONTENT> implements IRecipeCapabilit
     private final MBDMachine machine;
     @Getter
     private final RecipeCapabilityTraitDefinition<CONTENT> definition;
-    private final List<Runnable> listeners = new ArrayList<>();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
 
     public RecipeCapabilityTrait(MBDMachine machine, RecipeCapabilityTraitDefinition<CONTENT> definition) {
         this.machine = machine;
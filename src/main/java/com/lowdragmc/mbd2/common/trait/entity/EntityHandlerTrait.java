@@ -19,6 +19,7 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
@@ -56,6 +57,19 @@ public class EntityHandlerTrait extends RecipeCapabilityTrait<EntityIngredient>
         }
     }
 
+    @Override
+    public boolean collectIndexKeys(Consumer<Object> collector) {
+        entitiesLock.lock();
+        try {
+            for (var entity : entities) {
+                collector.accept(entity.getType());
+            }
+        } finally {
+            entitiesLock.unlock();
+        }
+        return true;
+    }
+
     @Override
     public List<EntityIngredient> handleRecipeInner(IO io, MBDRecipe recipe, List<EntityIngredient> left, @Nullable String slotName, boolean simulate) {
         if (io != getHandlerIO()) return left;
@@ -5,7 +5,9 @@ import com.lowdragmc.lowdraglib.side.fluid.FluidStack;
 import com.lowdragmc.lowdraglib.syncdata.annotation.DescSynced;
 import com.lowdragmc.lowdraglib.syncdata.annotation.Persisted;
 import com.lowdragmc.lowdraglib.syncdata.field.ManagedFieldHolder;
+import com.lowdragmc.mbd2.api.capability.recipe.ContentHasher;
 import com.lowdragmc.mbd2.api.capability.recipe.IO;
+import com.lowdragmc.mbd2.api.capability.recipe.RecipeSimulationLedger;
 import com.lowdragmc.mbd2.api.recipe.MBDRecipe;
 import com.lowdragmc.mbd2.api.recipe.ingredient.FluidIngredient;
 import com.lowdragmc.mbd2.common.machine.MBDMachine;
@@ -18,6 +20,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class FluidTankCapabilityTrait extends SimpleCapabilityTrait<IFluidHandler, FluidIngredient> {
     public static final ManagedFieldHolder MANAGED_FIELD_HOLDER = new ManagedFieldHolder(FluidTankCapabilityTrait.class);
@@ -123,6 +126,101 @@ public class FluidTankCapabilityTrait extends SimpleCapabilityTrait<IFluidHandle
         return left.isEmpty() ? null : left;
     }
 
+    @Override
+    public boolean simulateRecipe(IO io, MBDRecipe recipe, List<?> contents, @Nullable String slotName, RecipeSimulationLedger ledger) {
+        if (io != getHandlerIO()) return true;
+        var handled = ledger.units(storages.length);
+        var handledFluids = io == IO.OUT ? ledger.unitKeys(storages.length) : null;
+        for (int tank = 0; tank < storages.length; tank++) {
+            var storage = storages[tank];
+            var stored = storage.getFluid();
+            for (int i = 0; i < contents.size(); i++) {
+                if (ledger.isDone(i)) continue;
+                var ingredient = (FluidIngredient) contents.get(i);
+                if (ingredient.isEmpty()) {
+                    ledger.setLeft(i, 0);
+                    continue;
+                }
+                var left = ledger.getLeft(i, ingredient.getAmount());
+                if (io == IO.IN) {
+                    if (!ingredient.test(stored)) continue;
+                    var drained = Math.min(left, stored.getAmount() - handled[tank]);
+                    if (drained <= 0) continue;
+                    handled[tank] += drained;
+                    ledger.setLeft(i, left - drained);
+                } else if (io == IO.OUT) {
+                    var fluids = ingredient.getStacks();
+                    if (fluids.length == 0) {
+                        ledger.setLeft(i, 0);
+                        continue;
+                    }
+                    var output = fluids[0];
+                    // a tank only accepts the fluid it has been filled with during this simulation.
+                    var accepted = handled[tank] > 0 ?
+                            ((FluidStack) handledFluids[tank]).isFluidEqual(output) :
+                            storage.fill(output, true) > 0;
+                    if (!accepted) continue;
+                    var filled = Math.min(left, storage.getCapacity() - stored.getAmount() - handled[tank]);
+                    if (filled <= 0) continue;
+                    handled[tank] += filled;
+                    handledFluids[tank] = output;
+                    ledger.setLeft(i, left - filled);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long getCapacity(IO io, Object content, @Nullable String slotName) {
+        if (io != getHandlerIO()) return 0;
+        var ingredient = (FluidIngredient) content;
+        if (ingredient.isEmpty()) return Long.MAX_VALUE;
+        long capacity = 0;
+        if (io == IO.IN) {
+            for (var storage : storages) {
+                var stored = storage.getFluid();
+                if (ingredient.test(stored)) {
+                    capacity += stored.getAmount();
+                }
+            }
+        } else if (io == IO.OUT) {
+            var fluids = ingredient.getStacks();
+            if (fluids.length == 0) return Long.MAX_VALUE;
+            for (var storage : storages) {
+                // same as simulateRecipe, a tank accepting the fluid can be filled up.
+                if (storage.fill(fluids[0], true) > 0) {
+                    capacity += storage.getCapacity() - storage.getFluid().getAmount();
+                }
+            }
+        }
+        return capacity;
+    }
+
+    @Override
+    public boolean collectIndexKeys(Consumer<Object> collector) {
+        for (FluidStorage storage : storages) {
+            var stored = storage.getFluid();
+            if (!stored.isEmpty()) {
+                collector.accept(stored.getFluid());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hashContents(ContentHasher hasher) {
+        hasher.putIdentity(getDefinition()).putLong(storages.length);
+        for (FluidStorage storage : storages) {
+            var stored = storage.getFluid();
+            hasher.putLong(storage.getCapacity());
+            if (!stored.isEmpty()) {
+                hasher.putIdentity(stored.getFluid()).putLong(stored.getAmount()).putObject(stored.getTag());
+            }
+        }
+        return true;
+    }
+
     public boolean isEmpty() {
         if (isEmpty == null) {
             isEmpty = true;
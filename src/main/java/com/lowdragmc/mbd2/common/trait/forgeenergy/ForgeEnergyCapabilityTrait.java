@@ -3,7 +3,9 @@ package com.lowdragmc.mbd2.common.trait.forgeenergy;
 import com.lowdragmc.lowdraglib.syncdata.annotation.DescSynced;
 import com.lowdragmc.lowdraglib.syncdata.annotation.Persisted;
 import com.lowdragmc.lowdraglib.syncdata.field.ManagedFieldHolder;
+import com.lowdragmc.mbd2.api.capability.recipe.ContentHasher;
 import com.lowdragmc.mbd2.api.capability.recipe.IO;
+import com.lowdragmc.mbd2.api.capability.recipe.RecipeSimulationLedger;
 import com.lowdragmc.mbd2.api.recipe.MBDRecipe;
 import com.lowdragmc.mbd2.common.machine.MBDMachine;
 import com.lowdragmc.mbd2.common.trait.SimpleCapabilityTrait;
@@ -56,6 +58,36 @@ public class ForgeEnergyCapabilityTrait extends SimpleCapabilityTrait<IEnergySto
         return required > 0 ? List.of(required) : null;
     }
 
+    @Override
+    public boolean simulateRecipe(IO io, MBDRecipe recipe, List<?> contents, @Nullable String slotName, RecipeSimulationLedger ledger) {
+        if (io != getHandlerIO()) return true;
+        long required = 0;
+        for (int i = 0; i < contents.size(); i++) {
+            required += ledger.getLeft(i, (Integer) contents.get(i));
+        }
+        var request = (int) Math.min(Integer.MAX_VALUE, required);
+        long handled = io == IO.IN ? storage.extractEnergy(request, true) : storage.receiveEnergy(request, true);
+        for (int i = 0; i < contents.size(); i++) {
+            var left = ledger.getLeft(i, (Integer) contents.get(i));
+            var consumed = Math.min(left, handled);
+            handled -= consumed;
+            ledger.setLeft(i, left - consumed);
+        }
+        return true;
+    }
+
+    @Override
+    public long getCapacity(IO io, Object content, @Nullable String slotName) {
+        if (io != getHandlerIO()) return 0;
+        return io == IO.IN ? storage.extractEnergy(Integer.MAX_VALUE, true) : storage.receiveEnergy(Integer.MAX_VALUE, true);
+    }
+
+    @Override
+    public boolean hashContents(ContentHasher hasher) {
+        hasher.putIdentity(getDefinition()).putLong(storage.getEnergyStored()).putLong(storage.getMaxEnergyStored());
+        return true;
+    }
+
     @Override
     public IEnergyStorage getCapContent(IO capbilityIO) {
         return new EnergyStorageWrapper(this.storage, capbilityIO, getDefinition().getMaxReceive(), getDefinition().getMaxExtract());
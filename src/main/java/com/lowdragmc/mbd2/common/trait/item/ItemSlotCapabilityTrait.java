@@ -4,10 +4,15 @@ import com.lowdragmc.lowdraglib.misc.ItemStackTransfer;
 import com.lowdragmc.lowdraglib.syncdata.annotation.DescSynced;
 import com.lowdragmc.lowdraglib.syncdata.annotation.Persisted;
 import com.lowdragmc.lowdraglib.syncdata.field.ManagedFieldHolder;
+import com.lowdragmc.mbd2.api.capability.recipe.ContentHasher;
 import com.lowdragmc.mbd2.api.capability.recipe.IO;
+import com.lowdragmc.mbd2.api.capability.recipe.RecipeSimulationLedger;
 import com.lowdragmc.mbd2.api.recipe.MBDRecipe;
+import com.lowdragmc.mbd2.api.recipe.ingredient.SizedIngredient;
+import com.lowdragmc.mbd2.common.capability.recipe.ItemRecipeCapability;
 import com.lowdragmc.mbd2.common.machine.MBDMachine;
 import com.lowdragmc.mbd2.common.trait.SimpleCapabilityTrait;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.item.Items;
 import net.minecraft.world.item.crafting.Ingredient;
@@ -16,9 +21,11 @@ import net.minecraftforge.items.IItemHandler;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class ItemSlotCapabilityTrait extends SimpleCapabilityTrait<IItemHandler, Ingredient> {
     public static final ManagedFieldHolder MANAGED_FIELD_HOLDER = new ManagedFieldHolder(ItemSlotCapabilityTrait.class);
@@ -28,10 +35,12 @@ public class ItemSlotCapabilityTrait extends SimpleCapabilityTrait<IItemHandler,
     @Persisted
     @DescSynced
     public final ItemStackTransfer storage;
+    private final ItemSlotIndex slotIndex;
     private Boolean isEmpty;
 
     public ItemSlotCapabilityTrait(MBDMachine machine, ItemSlotCapabilityTraitDefinition definition) {
         super(machine, definition);
+        this.slotIndex = new ItemSlotIndex();
         this.storage = createStorage();
         this.storage.setOnContentsChanged(this::onContentsChanged);
     }
@@ -66,12 +75,27 @@ public class ItemSlotCapabilityTrait extends SimpleCapabilityTrait<IItemHandler,
         }
     }
 
+    /**
+     * Create the storage, it should report changed slots by {@link #onSlotChanged(int)} and reloading by {@link #onStorageLoaded()}.
+     */
     protected ItemStackTransfer createStorage() {
         var transfer = new ItemStackTransfer(getDefinition().getSlotSize()) {
             @Override
             public int getSlotLimit(int slot) {
                 return getDefinition().getSlotLimit();
             }
+
+            @Override
+            public void onContentsChanged(int slot) {
+                onSlotChanged(slot);
+                super.onContentsChanged(slot);
+            }
+
+            @Override
+            public void deserializeNBT(CompoundTag nbt) {
+                super.deserializeNBT(nbt);
+                onStorageLoaded();
+            }
         };
         if (getDefinition().getItemFilterSettings().isEnable()) {
             transfer.setFilter(getDefinition().getItemFilterSettings()::test);
@@ -84,34 +108,50 @@ public class ItemSlotCapabilityTrait extends SimpleCapabilityTrait<IItemHandler,
         notifyListeners();
     }
 
+    /**
+     * Called before {@link #onContentsChanged()} once a slot of the storage changed.
+     */
+    protected void onSlotChanged(int slot) {
+        slotIndex.markDirty(slot);
+    }
+
+    /**
+     * Called once the storage is reloaded.
+     */
+    protected void onStorageLoaded() {
+        slotIndex.markAllDirty();
+    }
+
     @Override
     public List<Ingredient> handleRecipeInner(IO io, MBDRecipe recipe, List<Ingredient> left, @Nullable String slotName, boolean simulate) {
         if (io != getHandlerIO()) return left;
         var capability = simulate ? storage.copy() : storage;
-        Iterator<Ingredient> iterator = left.iterator();
         if (io == IO.IN) {
-            while (iterator.hasNext()) {
-                Ingredient ingredient = iterator.next();
-                SLOT_LOOKUP:
-                for (int i = 0; i < capability.getSlots(); i++) {
+            var listIterator = left.listIterator();
+            while (listIterator.hasNext()) {
+                Ingredient ingredient = listIterator.next();
+                var amount = getIngredientAmount(ingredient);
+                var required = amount;
+                var candidates = slotIndex.getCandidates(storage, ingredient);
+                if (!simulate && candidates != null) {
+                    // extracting notifies listeners, which may query the index and overwrite the scratch.
+                    candidates = (BitSet) candidates.clone();
+                }
+                for (int i = nextSlot(candidates, 0); i >= 0 && required > 0; i = nextSlot(candidates, i + 1)) {
                     ItemStack itemStack = capability.getStackInSlot(i);
-                    //Does not look like a good implementation, but I think it's at least equal to vanilla Ingredient::test
-                    if (ingredient.test(itemStack)) {
-                        ItemStack[] ingredientStacks = ingredient.getItems();
-                        for (ItemStack ingredientStack : ingredientStacks) {
-                            if (ingredientStack.is(itemStack.getItem())) {
-                                ItemStack extracted = capability.extractItem(i, ingredientStack.getCount(), false);
-                                ingredientStack.setCount(ingredientStack.getCount() - extracted.getCount());
-                                if (ingredientStack.isEmpty()) {
-                                    iterator.remove();
-                                    break SLOT_LOOKUP;
-                                }
-                            }
-                        }
+                    if (!itemStack.isEmpty() && ItemRecipeCapability.test(ingredient, itemStack)) {
+                        required -= capability.extractItem(i, required, false).getCount();
                     }
                 }
+                if (required <= 0) {
+                    listIterator.remove();
+                } else if (required < amount) {
+                    var inner = ingredient instanceof SizedIngredient sizedIngredient ? sizedIngredient.getInner() : ingredient;
+                    listIterator.set(SizedIngredient.create(inner, required));
+                }
             }
         } else if (io == IO.OUT) {
+            Iterator<Ingredient> iterator = left.iterator();
             while (iterator.hasNext()) {
                 Ingredient ingredient = iterator.next();
                 var items = ingredient.getItems();
@@ -135,9 +175,9 @@ public class ItemSlotCapabilityTrait extends SimpleCapabilityTrait<IItemHandler,
                     // find index
                     var index = -1;
                     for (int i = 0; i < shuffledItems.size(); i++) {
-                        ItemStack output = shuffledItems.get(i);
+                        ItemStack output = shuffledItems.get(i).copy();
                         if (!output.isEmpty()) {
-                            for (int slot = 0; i < capability.getSlots(); i++) {
+                            for (int slot = 0; slot < capability.getSlots(); slot++) {
                                 ItemStack leftStack = capability.insertItem(slot, output.copy(), true);
                                 output.setCount(leftStack.getCount());
                                 if (output.isEmpty()) break;
@@ -165,6 +205,144 @@ public class ItemSlotCapabilityTrait extends SimpleCapabilityTrait<IItemHandler,
         return left.isEmpty() ? null : left;
     }
 
+    @Override
+    public boolean simulateRecipe(IO io, MBDRecipe recipe, List<?> contents, @Nullable String slotName, RecipeSimulationLedger ledger) {
+        if (io != getHandlerIO()) return true;
+        var slots = storage.getSlots();
+        var handled = ledger.units(slots);
+        if (io == IO.IN) {
+            for (int i = 0; i < contents.size(); i++) {
+                var ingredient = (Ingredient) contents.get(i);
+                long required = ledger.getLeft(i, getIngredientAmount(ingredient));
+                var candidates = slotIndex.getCandidates(storage, ingredient);
+                for (int slot = nextSlot(candidates, 0); slot >= 0 && required > 0; slot = nextSlot(candidates, slot + 1)) {
+                    var itemStack = storage.getStackInSlot(slot);
+                    if (itemStack.isEmpty() || handled[slot] >= itemStack.getCount() || !ItemRecipeCapability.test(ingredient, itemStack)) continue;
+                    // same as extractItem, at most a stack can be extracted at once.
+                    var extracted = Math.min(Math.min(required, itemStack.getCount() - handled[slot]), itemStack.getMaxStackSize());
+                    handled[slot] += extracted;
+                    required -= extracted;
+                }
+                ledger.setLeft(i, required);
+            }
+        } else if (io == IO.OUT) {
+            var handledItems = ledger.unitKeys(slots);
+            for (int i = 0; i < contents.size(); i++) {
+                if (ledger.isDone(i)) continue;
+                var items = ((Ingredient) contents.get(i)).getItems();
+                if (items.length == 0) {
+                    ledger.setLeft(i, 0);
+                } else if (items.length == 1) {
+                    var output = items[0];
+                    ledger.setLeft(i, output.isEmpty() ? 0 : simulateInsert(output, ledger.getLeft(i, output.getCount()), handled, handledItems, true));
+                } else { // random output, any of them should be inserted.
+                    for (ItemStack output : items) {
+                        if (!output.isEmpty() && simulateInsert(output, output.getCount(), handled, handledItems, false) <= 0) {
+                            ledger.setLeft(i, 0);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long getCapacity(IO io, Object content, @Nullable String slotName) {
+        if (io != getHandlerIO()) return 0;
+        var ingredient = (Ingredient) content;
+        long capacity = 0;
+        if (io == IO.IN) {
+            var candidates = slotIndex.getCandidates(storage, ingredient);
+            for (int slot = nextSlot(candidates, 0); slot >= 0; slot = nextSlot(candidates, slot + 1)) {
+                var itemStack = storage.getStackInSlot(slot);
+                if (!itemStack.isEmpty() && ItemRecipeCapability.test(ingredient, itemStack)) {
+                    capacity += itemStack.getCount();
+                }
+            }
+        } else if (io == IO.OUT) {
+            var items = ingredient.getItems();
+            if (items.length == 0 || items[0].isEmpty()) return Long.MAX_VALUE;
+            // random output, it's not measurable.
+            if (items.length > 1) return -1;
+            for (int slot = 0; slot < storage.getSlots(); slot++) {
+                capacity += getSlotRoom(slot, items[0]);
+            }
+        }
+        return capacity;
+    }
+
+    /**
+     * The next slot to be checked for an ingredient, see {@link ItemSlotIndex#getCandidates}.
+     * @param candidates candidate slots, null if all slots should be checked.
+     * @return -1 if there are no more slots.
+     */
+    private int nextSlot(@Nullable BitSet candidates, int from) {
+        if (candidates == null) return from < storage.getSlots() ? from : -1;
+        return candidates.nextSetBit(from);
+    }
+
+    /**
+     * Simulate inserting an output into the storage, regarding what has been inserted during current simulation.
+     * @return left amount.
+     */
+    private long simulateInsert(ItemStack output, long amount, long[] handled, Object[] handledItems, boolean record) {
+        for (int slot = 0; slot < storage.getSlots() && amount > 0; slot++) {
+            // a slot only accepts the item it has been inserted with during this simulation.
+            if (handled[slot] > 0 && !ItemStack.isSameItemSameTags((ItemStack) handledItems[slot], output)) continue;
+            var inserted = Math.min(amount, getSlotRoom(slot, output) - handled[slot]);
+            if (inserted <= 0) continue;
+            amount -= inserted;
+            if (record) {
+                handled[slot] += inserted;
+                handledItems[slot] = output;
+            }
+        }
+        return amount;
+    }
+
+    /**
+     * How many of the item can be inserted into the slot, same as {@link ItemStackTransfer#insertItem} but without building stacks.
+     */
+    private long getSlotRoom(int slot, ItemStack output) {
+        var stored = storage.getStackInSlot(slot);
+        if (!stored.isEmpty() && !ItemStack.isSameItemSameTags(stored, output)) return 0;
+        if (!storage.isItemValid(slot, output)) return 0;
+        return Math.max(0, Math.min(storage.getSlotLimit(slot), output.getMaxStackSize()) - stored.getCount());
+    }
+
+    private static int getIngredientAmount(Ingredient ingredient) {
+        if (ingredient instanceof SizedIngredient sizedIngredient) {
+            return sizedIngredient.getAmount();
+        }
+        var items = ingredient.getItems();
+        return items.length > 0 ? items[0].getCount() : 1;
+    }
+
+    @Override
+    public boolean collectIndexKeys(Consumer<Object> collector) {
+        for (int i = 0; i < storage.getSlots(); i++) {
+            var stack = storage.getStackInSlot(i);
+            if (!stack.isEmpty()) {
+                collector.accept(stack.getItem());
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hashContents(ContentHasher hasher) {
+        hasher.putIdentity(getDefinition()).putLong(storage.getSlots());
+        for (int i = 0; i < storage.getSlots(); i++) {
+            var stack = storage.getStackInSlot(i);
+            if (!stack.isEmpty()) {
+                hasher.putLong(i).putIdentity(stack.getItem()).putLong(stack.getCount()).putObject(stack.getTag());
+            }
+        }
+        return true;
+    }
+
     public boolean isEmpty() {
         if (isEmpty == null) {
             isEmpty = true;
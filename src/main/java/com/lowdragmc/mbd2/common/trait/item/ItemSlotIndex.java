@@ -0,0 +1,106 @@
+package com.lowdragmc.mbd2.common.trait.item;
+
+import com.lowdragmc.mbd2.api.recipe.ingredient.ItemIdMatcher;
+import com.lowdragmc.mbd2.common.capability.recipe.ItemRecipeCapability;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.crafting.Ingredient;
+import net.minecraftforge.items.IItemHandler;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+
+/**
+ * An index from item ids to the slots holding them, so that recipe handling only touches relevant slots.
+ * <br>
+ * It is updated incrementally, slots are marked by the per-slot change hooks of the storage, see {@link #markDirty(int)},
+ * and only marked slots are re-indexed before the next query.
+ * Candidates may be stale while the storage is modified off-thread, they have to be tested again.
+ */
+final class ItemSlotIndex {
+    private static final ThreadLocal<BitSet> CANDIDATES = ThreadLocal.withInitial(BitSet::new);
+
+    private final Int2ObjectOpenHashMap<BitSet> slots = new Int2ObjectOpenHashMap<>();
+    private final BitSet dirtySlots = new BitSet();
+    private Item[] items = new Item[0];
+    private boolean allDirty = true;
+
+    /**
+     * A slot changed, it will be re-indexed before the next query.
+     */
+    synchronized void markDirty(int slot) {
+        dirtySlots.set(slot);
+    }
+
+    /**
+     * The whole storage changed, e.g. it's loaded.
+     */
+    synchronized void markAllDirty() {
+        allDirty = true;
+    }
+
+    private void update(IItemHandler storage) {
+        var size = storage.getSlots();
+        if (allDirty || items.length != size) {
+            allDirty = false;
+            dirtySlots.clear();
+            items = new Item[size];
+            slots.clear();
+            for (int slot = 0; slot < size; slot++) {
+                updateSlot(storage, slot);
+            }
+            return;
+        }
+        for (int slot = dirtySlots.nextSetBit(0); slot >= 0 && slot < size; slot = dirtySlots.nextSetBit(slot + 1)) {
+            updateSlot(storage, slot);
+        }
+        dirtySlots.clear();
+    }
+
+    private void updateSlot(IItemHandler storage, int slot) {
+        var stack = storage.getStackInSlot(slot);
+        var item = stack.isEmpty() ? null : stack.getItem();
+        var indexed = items[slot];
+        if (item == indexed) return;
+        if (indexed != null) {
+            var id = ItemIdMatcher.getId(indexed);
+            var bits = slots.get(id);
+            bits.clear(slot);
+            if (bits.isEmpty()) slots.remove(id);
+        }
+        if (item != null) {
+            slots.computeIfAbsent(ItemIdMatcher.getId(item), id -> new BitSet(items.length)).set(slot);
+        }
+        items[slot] = item;
+    }
+
+    /**
+     * Get slots which may match the ingredient, iterate them by {@link BitSet#nextSetBit(int)} to keep the slot order.
+     * <br>
+     * The result is a scratch of the current thread, it's only valid until the next query in the same thread.
+     * Copy it if the storage is modified while iterating, listeners of the storage may query again.
+     * @return null if the ingredient can't be indexed, all slots should be checked.
+     */
+    @Nullable
+    synchronized BitSet getCandidates(IItemHandler storage, Ingredient ingredient) {
+        var matcher = ItemRecipeCapability.getMatcher(ingredient);
+        if (matcher == null) return null;
+        update(storage);
+        var candidates = CANDIDATES.get();
+        candidates.clear();
+        var ids = matcher.getIds();
+        // go through the smaller side.
+        if (ids.size() <= slots.size()) {
+            for (var iterator = ids.iterator(); iterator.hasNext(); ) {
+                var bits = slots.get(iterator.nextInt());
+                if (bits != null) candidates.or(bits);
+            }
+        } else {
+            for (var entry : Int2ObjectMaps.fastIterable(slots)) {
+                if (ids.contains(entry.getIntKey())) candidates.or(entry.getValue());
+            }
+        }
+        return candidates;
+    }
+}
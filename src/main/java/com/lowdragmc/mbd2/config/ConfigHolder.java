@@ -21,6 +21,38 @@ public class ConfigHolder {
             .comment("Whether search for recipes asynchronously.")
             .define("asyncRecipeSearching", true);
 
+    private static final ForgeConfigSpec.IntValue RECIPE_SEARCH_THREADS = BUILDER
+            .comment("The amount of threads for asynchronous recipe searching.")
+            .defineInRange("recipeSearchThreads", 2, 1, 64);
+
+    private static final ForgeConfigSpec.IntValue RECIPE_SEARCH_QUEUE_LIMIT = BUILDER
+            .comment("The max amount of queued asynchronous recipe searches, machines will retry later if the queue is full.")
+            .defineInRange("recipeSearchQueueLimit", 256, 1, 65536);
+
+    private static final ForgeConfigSpec.IntValue RECIPE_SEARCH_CACHE_SIZE = BUILDER
+            .comment("The max amount of cached recipe searching results per recipe type, 0 to disable the cache.")
+            .defineInRange("recipeSearchCacheSize", 128, 0, 65536);
+
+    private static final ForgeConfigSpec.BooleanValue RECIPE_LOGIC_SLEEPING = BUILDER
+            .comment("Whether idle machines stop searching for recipes until their recipe handlers changed.")
+            .define("recipeLogicSleeping", true);
+
+    private static final ForgeConfigSpec.IntValue RECIPE_LOGIC_SLEEP_FALLBACK_INTERVAL = BUILDER
+            .comment("The fallback interval (ticks) of sleeping machines to search for recipes anyway, e.g. for changes of recipe conditions.")
+            .defineInRange("recipeLogicSleepFallbackInterval", 100, 5, 72000);
+
+    private static final ForgeConfigSpec.IntValue ASYNC_PATTERN_CHECK_THREADS = BUILDER
+            .comment("The amount of threads for asynchronous multiblock pattern checking, controllers are sharded by chunk regions.")
+            .defineInRange("asyncPatternCheckThreads", 1, 1, 16);
+
+    private static final ForgeConfigSpec.IntValue ASYNC_PATTERN_CHECK_MAX_BACKOFF = BUILDER
+            .comment("The max interval (s) of asynchronous pattern checking for multiblocks failing repeatedly with the same error.")
+            .defineInRange("asyncPatternCheckMaxBackoff", 8, 1, 300);
+
+    private static final ForgeConfigSpec.IntValue PATTERN_SNAPSHOT_MIN_VOLUME = BUILDER
+            .comment("The min bounding box volume of multiblocks to be checked against a snapshot of chunk sections instead of the world, 0 to disable.")
+            .defineInRange("patternSnapshotMinVolume", 4096, 0, 1 << 20);
+
     private static final ForgeConfigSpec.BooleanValue USE_VBO = BUILDER
             .comment("Whether use vbo for preview page rendering.")
             .define("useVBO", true);
@@ -33,6 +65,22 @@ public class ConfigHolder {
 
     public static boolean asyncRecipeSearching;
 
+    public static int recipeSearchThreads;
+
+    public static int recipeSearchQueueLimit;
+
+    public static int recipeSearchCacheSize;
+
+    public static boolean recipeLogicSleeping;
+
+    public static int recipeLogicSleepFallbackInterval;
+
+    public static int asyncPatternCheckThreads;
+
+    public static int asyncPatternCheckMaxBackoff;
+
+    public static int patternSnapshotMinVolume;
+
     public static boolean useVBO;
 
     public static int multiblockPreviewDuration;
@@ -40,6 +88,14 @@ public class ConfigHolder {
     @SubscribeEvent
     static void onLoad(final ModConfigEvent event) {
         asyncRecipeSearching = ASYNC_RECIPE_SEARCHING.get();
+        recipeSearchThreads = RECIPE_SEARCH_THREADS.get();
+        recipeSearchQueueLimit = RECIPE_SEARCH_QUEUE_LIMIT.get();
+        recipeSearchCacheSize = RECIPE_SEARCH_CACHE_SIZE.get();
+        recipeLogicSleeping = RECIPE_LOGIC_SLEEPING.get();
+        recipeLogicSleepFallbackInterval = RECIPE_LOGIC_SLEEP_FALLBACK_INTERVAL.get();
+        asyncPatternCheckThreads = ASYNC_PATTERN_CHECK_THREADS.get();
+        asyncPatternCheckMaxBackoff = ASYNC_PATTERN_CHECK_MAX_BACKOFF.get();
+        patternSnapshotMinVolume = PATTERN_SNAPSHOT_MIN_VOLUME.get();
         useVBO = USE_VBO.get();
         multiblockPreviewDuration = MULTIBLOCK_PREVIEW_DURATION.get();
     }
@@ -0,0 +1,72 @@
+package com.lowdragmc.mbd2.core;
+
+import it.unimi.dsi.fastutil.objects.ReferenceLinkedOpenHashSet;
+import net.minecraft.world.level.block.entity.BlockEntity;
+
+import java.util.Set;
+
+/**
+ * Block entities to be {@link BlockEntity#setChanged() changed} once at the end of the level tick, instead of submitting a server task per change.
+ * <br>
+ * Changes made on the server thread are queued without locking, the ones made off-thread (e.g. async recipe searching) are queued under a lock.
+ * A block entity is queued at most once until the queue is flushed.
+ */
+public final class BlockEntityDirtyQueue {
+    // only accessed on the server thread
+    private final Set<BlockEntity> queued = new ReferenceLinkedOpenHashSet<>();
+    private final Set<BlockEntity> offThreadQueued = new ReferenceLinkedOpenHashSet<>();
+
+    public void markDirty(BlockEntity blockEntity, boolean isServerThread) {
+        if (isServerThread) {
+            queued.add(blockEntity);
+        } else {
+            synchronized (offThreadQueued) {
+                offThreadQueued.add(blockEntity);
+            }
+        }
+    }
+
+    /**
+     * Apply queued changes, it should be called on the server thread.
+     * Block entities changed while flushing will be handled in the next flushing.
+     */
+    public void flush() {
+        if (!queued.isEmpty()) {
+            var blockEntities = queued.toArray(BlockEntity[]::new);
+            queued.clear();
+            setChanged(blockEntities);
+        }
+        BlockEntity[] blockEntities;
+        synchronized (offThreadQueued) {
+            if (offThreadQueued.isEmpty()) return;
+            blockEntities = offThreadQueued.toArray(BlockEntity[]::new);
+            offThreadQueued.clear();
+        }
+        setChanged(blockEntities);
+    }
+
+    private static void setChanged(BlockEntity[] blockEntities) {
+        for (var blockEntity : blockEntities) {
+            if (!blockEntity.isRemoved()) {
+                blockEntity.setChanged();
+            }
+        }
+    }
+
+    /**
+     * Drop all queued changes, e.g. the level is unloaded.
+     */
+    public void clear() {
+        queued.clear();
+        synchronized (offThreadQueued) {
+            offThreadQueued.clear();
+        }
+    }
+
+    /**
+     * Implemented by {@link net.minecraft.server.level.ServerLevel}.
+     */
+    public interface Holder {
+        BlockEntityDirtyQueue mbd2$getBlockEntityDirtyQueue();
+    }
+}
@@ -0,0 +1,63 @@
+package com.lowdragmc.mbd2.core;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.world.level.chunk.LevelChunk;
+
+import javax.annotation.Nullable;
+
+/**
+ * A per-thread direct-mapped cache of loaded chunks for off-thread world reads, e.g. async pattern checking.
+ * <br>
+ * Each thread has its own entries, so there is no lock. All entries are invalidated by bumping the generation,
+ * which is done on the main thread once chunks may be changed (cache cleared / chunk unloaded).
+ */
+public final class ThreadChunkCache {
+    private static final int SIZE = 64;
+
+    private static final class Entries {
+        private final long[] positions = new long[SIZE];
+        private final LevelChunk[] chunks = new LevelChunk[SIZE];
+        private final int[] generations = new int[SIZE];
+    }
+
+    private final ThreadLocal<Entries> entries = ThreadLocal.withInitial(Entries::new);
+    private volatile int generation;
+
+    private static int slot(long chunkPos) {
+        return (int) HashCommon.mix(chunkPos) & (SIZE - 1);
+    }
+
+    @Nullable
+    public LevelChunk get(long chunkPos) {
+        var cache = entries.get();
+        var slot = slot(chunkPos);
+        var chunk = cache.chunks[slot];
+        if (chunk != null && cache.positions[slot] == chunkPos && cache.generations[slot] == generation) {
+            return chunk;
+        }
+        return null;
+    }
+
+    public void put(long chunkPos, LevelChunk chunk) {
+        var cache = entries.get();
+        var slot = slot(chunkPos);
+        cache.positions[slot] = chunkPos;
+        cache.chunks[slot] = chunk;
+        cache.generations[slot] = generation;
+    }
+
+    /**
+     * Invalidate entries of all threads.
+     */
+    public void invalidate() {
+        // only bumped on the main thread
+        generation++;
+    }
+
+    /**
+     * Implemented by {@link net.minecraft.server.level.ServerChunkCache}.
+     */
+    public interface Holder {
+        ThreadChunkCache mbd2$getThreadChunkCache();
+    }
+}
@@ -25,9 +25,11 @@ public class ChunkMixin {
         MinecraftServer server = level.getServer();
         if (server != null) {
             if (level instanceof ServerLevel serverLevel) {
-                for (var structure : MultiblockWorldSavedData.getOrCreate(serverLevel).getControllerInPos(pos)) {
+                var mwsd = MultiblockWorldSavedData.getOrCreate(serverLevel);
+                for (var structure : mwsd.getControllerInPos(pos)) {
                     if (structure.isPosInCache(pos)) {
-                        server.executeBlocking(() -> structure.onBlockStateChanged(pos, state));
+                        // handled once per structure at the end of the level tick
+                        mwsd.onBlockChanged(structure, pos);
                     }
                 }
             }
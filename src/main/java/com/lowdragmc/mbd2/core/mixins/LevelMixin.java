@@ -24,16 +24,15 @@ public abstract class LevelMixin implements LevelAccessor {
 
     @Shadow @Final private Thread thread;
 
-    @Shadow public abstract boolean isLoaded(BlockPos pPos);
-
     @Unique
     private ChunkAccess mbd2$getChunkNow(int pX, int pZ) {
         return this.getChunkSource().getChunkNow(pX, pZ);
     }
 
+    // chunks are looked up once from the thread chunk cache, see ServerChunkProviderMixin. unloaded chunks are left to the vanilla path.
     @Inject(method = "getBlockEntity", at = @At(value = "HEAD"), cancellable = true)
     private void getTileEntity(BlockPos pos, CallbackInfoReturnable<BlockEntity> cir) {
-        if (!this.isClientSide && Thread.currentThread() != this.thread && (MultiblockWorldSavedData.isThreadService() || AsyncThreadData.isThreadService()) && isLoaded(pos)) {
+        if (!this.isClientSide && Thread.currentThread() != this.thread && (MultiblockWorldSavedData.isThreadService() || AsyncThreadData.isThreadService()) && !this.isOutsideBuildHeight(pos)) {
             ChunkAccess chunk = this.mbd2$getChunkNow(pos.getX() >> 4, pos.getZ() >> 4);
             if (chunk instanceof LevelChunk levelChunk) {
                 cir.setReturnValue(levelChunk.getBlockEntities().get(pos));
@@ -43,7 +42,7 @@ public abstract class LevelMixin implements LevelAccessor {
 
     @Inject(method = "getBlockState", at = @At(value = "HEAD"), cancellable = true)
     private void getBlockState(BlockPos pos, CallbackInfoReturnable<BlockState> cir) {
-        if (!this.isClientSide && Thread.currentThread() != this.thread && (MultiblockWorldSavedData.isThreadService() || AsyncThreadData.isThreadService()) && isLoaded(pos)) {
+        if (!this.isClientSide && Thread.currentThread() != this.thread && (MultiblockWorldSavedData.isThreadService() || AsyncThreadData.isThreadService()) && !this.isOutsideBuildHeight(pos)) {
             ChunkAccess chunk = this.mbd2$getChunkNow(pos.getX() >> 4, pos.getZ() >> 4);
             if (chunk != null) {
                 cir.setReturnValue(chunk.getBlockState(pos));
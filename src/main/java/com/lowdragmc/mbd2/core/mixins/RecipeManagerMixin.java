@@ -32,6 +32,8 @@ public abstract class RecipeManagerMixin {
         recipes = new HashMap<>(recipes);
         for (var recipeType : MBDRegistries.RECIPE_TYPES) {
             recipeType.getBuiltinRecipes().forEach((id, recipe) -> recipes.computeIfAbsent(recipeType, type -> new HashMap<>()).put(id, recipe));
+            // rebuild proxy recipes and recipe index
+            recipeType.onRecipesReloaded();
         }
     }
 }
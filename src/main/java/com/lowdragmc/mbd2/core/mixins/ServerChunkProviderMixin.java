@@ -2,6 +2,7 @@ package com.lowdragmc.mbd2.core.mixins;
 
 import com.lowdragmc.lowdraglib.async.AsyncThreadData;
 import com.lowdragmc.mbd2.api.pattern.MultiblockWorldSavedData;
+import com.lowdragmc.mbd2.core.ThreadChunkCache;
 import com.mojang.datafixers.util.Either;
 import net.minecraft.server.level.ChunkHolder;
 import net.minecraft.server.level.ServerChunkCache;
@@ -19,40 +20,25 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 import javax.annotation.Nullable;
-import java.util.Arrays;
 
 @Mixin(ServerChunkCache.class)
-public abstract class ServerChunkProviderMixin {
+public abstract class ServerChunkProviderMixin implements ThreadChunkCache.Holder {
 
     @Shadow @Final Thread mainThread;
 
     @Unique
-    private final long[] mbd2$mbdLastChunkPos = new long[4];
-
-    @Unique
-    private final LevelChunk[] mbd2$mbdLastChunk = new LevelChunk[4];
+    private final ThreadChunkCache mbd2$threadChunkCache = new ThreadChunkCache();
 
     @Shadow @Nullable protected abstract ChunkHolder getVisibleChunkIfPresent(long p_217213_1_);
 
-    @Unique
-    private void mbd2$storeInCache(long pos, LevelChunk chunkAccess) {
-        synchronized (this.mbd2$mbdLastChunkPos) {
-            for(int i = 3; i > 0; --i) {
-                this.mbd2$mbdLastChunkPos[i] = this.mbd2$mbdLastChunkPos[i - 1];
-                this.mbd2$mbdLastChunk[i] = this.mbd2$mbdLastChunk[i - 1];
-            }
-
-            this.mbd2$mbdLastChunkPos[0] = pos;
-            this.mbd2$mbdLastChunk[0] = chunkAccess;
-        }
+    @Override
+    public ThreadChunkCache mbd2$getThreadChunkCache() {
+        return mbd2$threadChunkCache;
     }
 
     @Inject(method = "clearCache", at = @At(value = "TAIL"))
     private void injectClearCache(CallbackInfo ci) {
-        synchronized (this.mbd2$mbdLastChunkPos) {
-            Arrays.fill(this.mbd2$mbdLastChunkPos, ChunkPos.INVALID_CHUNK_POS);
-            Arrays.fill(this.mbd2$mbdLastChunk, null);
-        }
+        mbd2$threadChunkCache.invalidate();
     }
 
     @Inject(method = "getChunkNow", at = @At(value = "HEAD"), cancellable = true)
@@ -60,11 +46,10 @@ public abstract class ServerChunkProviderMixin {
         if (Thread.currentThread() != this.mainThread && (MultiblockWorldSavedData.isThreadService() || AsyncThreadData.isThreadService())) {
             long i = ChunkPos.asLong(pChunkX, pChunkZ);
 
-            for(int j = 0; j < 4; ++j) {
-                if (i == this.mbd2$mbdLastChunkPos[j]) {
-                    cir.setReturnValue(this.mbd2$mbdLastChunk[j]);
-                    return;
-                }
+            LevelChunk cached = mbd2$threadChunkCache.get(i);
+            if (cached != null) {
+                cir.setReturnValue(cached);
+                return;
             }
 
             ChunkHolder chunkholder = this.getVisibleChunkIfPresent(i);
@@ -73,7 +58,7 @@ public abstract class ServerChunkProviderMixin {
                 if (either != null) {
                     ChunkAccess chunk = either.left().orElse(null);
                     if (chunk instanceof LevelChunk levelChunk) {
-                        mbd2$storeInCache(i, levelChunk);
+                        mbd2$threadChunkCache.put(i, levelChunk);
                         cir.setReturnValue(levelChunk);
                         return;
                     }
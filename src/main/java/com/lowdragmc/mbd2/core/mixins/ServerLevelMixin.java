@@ -0,0 +1,18 @@
+package com.lowdragmc.mbd2.core.mixins;
+
+import com.lowdragmc.mbd2.core.BlockEntityDirtyQueue;
+import net.minecraft.server.level.ServerLevel;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+
+@Mixin(ServerLevel.class)
+public abstract class ServerLevelMixin implements BlockEntityDirtyQueue.Holder {
+
+    @Unique
+    private final BlockEntityDirtyQueue mbd2$blockEntityDirtyQueue = new BlockEntityDirtyQueue();
+
+    @Override
+    public BlockEntityDirtyQueue mbd2$getBlockEntityDirtyQueue() {
+        return mbd2$blockEntityDirtyQueue;
+    }
+}
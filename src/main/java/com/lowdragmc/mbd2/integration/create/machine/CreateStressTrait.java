@@ -15,12 +15,12 @@ import lombok.Getter;
 import net.minecraft.util.Mth;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class CreateStressTrait implements IRecipeCapabilityTrait<Float> {
-    protected List<Runnable> listeners = new ArrayList<>();
+    protected List<Runnable> listeners = new CopyOnWriteArrayList<>();
 
     public final static TraitDefinition DEFINITION = new TraitDefinition() {
         @Override
@@ -0,0 +1,28 @@
+package com.lowdragmc.mbd2.utils;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+
+/**
+ * @implNote NBTUtil
+ */
+public class NBTUtil {
+
+    /**
+     * Whether merging the subset into the tag leaves the tag unchanged, same as {@code tag.copy().merge(subset).equals(tag)} but without copying.
+     * <br>
+     * Nested compounds are matched recursively, other values (including lists) have to be equal.
+     */
+    public static boolean isSubset(CompoundTag subset, CompoundTag tag) {
+        for (String key : subset.getAllKeys()) {
+            Tag expected = subset.get(key);
+            Tag actual = tag.get(key);
+            if (expected instanceof CompoundTag expectedCompound && actual instanceof CompoundTag actualCompound) {
+                if (!isSubset(expectedCompound, actualCompound)) return false;
+            } else if (!expected.equals(actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}